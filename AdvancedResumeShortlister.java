@@ -1,9 +1,41 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 import java.util.regex.*;
 import java.util.stream.*;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
 
 public class AdvancedResumeShortlister {
     
@@ -14,10 +46,21 @@ public class AdvancedResumeShortlister {
     private static final double EXPERIENCE_WEIGHT = 0.7;
     private static final double SKILL_WEIGHT = 1.2;
     private static final double EDUCATION_WEIGHT = 0.5;
+    private static final int DEFAULT_TOP_K = 10;
+    private static final int DEFAULT_QUEUE_DEPTH = 256;
+    private static final int SPILL_BATCH_SIZE = 100_000;
+    private static final int WATCH_SETTLE_MILLIS = 10;
+    private static final double DEFAULT_DEDUP_THRESHOLD = 0.9;
+    
+    // Ranking order: score descending, ties broken by name so every run orders the same way
+    private static final Comparator<RankedResume> RANKING_ORDER =
+        Comparator.comparingDouble(RankedResume::getScore).reversed()
+                  .thenComparing(rr -> rr.getResume().getName());
     
     // Knowledge bases (could be loaded from files/databases)
-    private static final Set<String> TECHNICAL_SKILLS = loadSkills("technical_skills.txt");
-    private static final Set<String> SOFT_SKILLS = loadSkills("soft_skills.txt");
+    private static final Path TECHNICAL_SKILLS_FILE = Paths.get("technical_skills.txt");
+    private static final Path SOFT_SKILLS_FILE = Paths.get("soft_skills.txt");
+    private static final String DEFAULT_KB_ARTIFACT = "knowledge_base.rskb";
     private static final Set<String> DEGREE_TYPES = Set.of(
         "BS", "B.S.", "Bachelor", "MS", "M.S.", "Master", 
         "PhD", "Ph.D", "Doctorate", "MBA"
@@ -27,44 +70,176 @@ public class AdvancedResumeShortlister {
         "Google Cloud Certified", "Microsoft Certified"
     );
     
-    // Regular expression patterns
-    private static final Pattern SKILL_PATTERN = buildSkillPattern();
-    private static final Pattern EXPERIENCE_PATTERN = Pattern.compile(
-        "(\\d+)\\s*\\+?\\s*years?\\s*(?:of\\s*)?experience", 
-        Pattern.CASE_INSENSITIVE
-    );
-    private static final Pattern EDUCATION_PATTERN = buildEducationPattern();
-    private static final Pattern CERTIFICATION_PATTERN = buildCertificationPattern();
-    private static final Pattern PROJECT_PATTERN = Pattern.compile(
-        "project\\s*:\\s*(.+?)(?=\\n|$)", Pattern.CASE_INSENSITIVE
+    private static final List<String> FIELDS_OF_STUDY = List.of(
+        "Computer Science", "Engineering", "IT", "Information Technology"
     );
     
-    // Job requirements (would typically be loaded per position)
-    private JobRequirements currentJobRequirements;
+    // Single-pass feature extractor (Aho-Corasick over skills plus degree/cert/project markers),
+    // mapped from a compiled artifact when a current one is present
+    private static final FeatureExtractor FEATURE_EXTRACTOR = loadFeatureExtractor();
+    private static final SkillAutomaton SKILL_AUTOMATON = FEATURE_EXTRACTOR.getAutomaton();
+    
+    // Default job for the single-position API; batch runs pass their plans explicitly
+    private ScoringPlan scoringPlan;
+    
+    // Use the legacy one-regex-per-feature extraction (for cross-checking)
+    private boolean regexExtraction;
+    
+    // Read .txt resumes as raw bytes in the extractor instead of decoding them up front
+    private boolean byteIngestion;
+    
+    // Optional on-disk cache of extracted features
+    private FeatureCache featureCache;
+    
+    // Optional near-duplicate detection; duplicates reuse features and are left out of rankings
+    private NearDuplicateIndex nearDuplicates;
+    
+    // Sharded runs: only the files of this process's shard are ranked (null ranks everything)
+    private Predicate<Path> shardFilter;
+    
+    // Result files: csv, jsonl or binary (see RankingWriter)
+    private String outputFormat = "csv";
+    
+    // Stage timings and counters for this instance's runs
+    private final RunMetrics metrics = new RunMetrics();
     
     public static void main(String[] args) {
         System.out.println("Arguments received: " + Arrays.toString(args));
-        if (args.length < 2) {
-            System.out.println("Usage: java AdvancedResumeShortlister <job_requirements_file> <resumes_directory>");
+        Map<String, String> options = new HashMap<>();
+        List<String> positional = new ArrayList<>();
+        parseArguments(args, options, positional);
+        if (options.containsKey("build-index") || options.containsKey("query")) {
+            runIndexCommand(options, positional);
+            return;
+        }
+        if (options.containsKey("compile-kb")) {
+            compileKnowledgeBase(options);
+            return;
+        }
+        if (options.containsKey("build-store") || options.containsKey("store")) {
+            runStoreCommand(options, positional);
+            return;
+        }
+        if (options.containsKey("read-ranking")) {
+            readRanking(options);
+            return;
+        }
+        if (options.containsKey("shard") || options.containsKey("shards")) {
+            runShardCommand(options, positional);
+            return;
+        }
+        if (options.containsKey("bench") || options.containsKey("generate-corpus")) {
+            runBenchmarks(options, positional);
+            return;
+        }
+        if (options.containsKey("serve")) {
+            runService(options);
+            return;
+        }
+        if (positional.size() < 2) {
+            System.out.println("Usage: java AdvancedResumeShortlister [options] <job_requirements_file>... <resumes_directory>");
+            System.out.println("With several job files, resumes are extracted once and ranked for every job.");
+            System.out.println("Options:");
+            System.out.println("  --extractor=fused|regex   feature extraction engine (default: fused)");
+            System.out.println("  --stream                  stream resumes through a bounded pipeline, keeping only the top K");
+            System.out.println("  --top=K                   candidates kept in streaming mode (default: " + DEFAULT_TOP_K + ")");
+            System.out.println("  --queue-depth=N           files read ahead of the scoring workers (default: " + DEFAULT_QUEUE_DEPTH + ")");
+            System.out.println("  --full-ranking            in streaming mode, write every resume to the CSV (spilled to disk)");
+            System.out.println("  --watch                   keep running and re-rank only resumes that are added, changed or deleted");
+            System.out.println("  --ingest=string|bytes     decode resumes up front, or match on raw UTF-8 bytes (default: string)");
+            System.out.println("  --cache-dir=DIR           reuse extracted features of unchanged resumes across runs");
+            System.out.println("  --dedup[=SIMILARITY]      collapse near-duplicate resumes (default similarity: " + DEFAULT_DEDUP_THRESHOLD + ")");
+            System.out.println("  --combined-csv            with several jobs, write one CSV with a Job column instead of one per job");
+            System.out.println("  --format=csv|jsonl|binary result file format (default: csv; binary files are read with --read-ranking)");
+            System.out.println("  --metrics=FILE            print per-stage timings and write them to FILE as JSON");
+            System.out.println("Skill index:");
+            System.out.println("  java AdvancedResumeShortlister --build-index=FILE <resumes_directory>");
+            System.out.println("  java AdvancedResumeShortlister --index=FILE --query=Skill:weight,... [--top=K] [--verify]");
+            System.out.println("Sharded (one child JVM per shard; failed shards are retried on their own):");
+            System.out.println("  java AdvancedResumeShortlister --shards=N [--shard-retries=R] [options] <job_requirements_file> <resumes_directory>");
+            System.out.println("Knowledge base (startup maps the artifact instead of rebuilding from the skill files):");
+            System.out.println("  java AdvancedResumeShortlister --compile-kb[=FILE]   (default " + DEFAULT_KB_ARTIFACT
+                + "; load another with -Dshortlister.kb=FILE)");
+            System.out.println("Feature store (re-rank with new weights without re-reading resumes):");
+            System.out.println("  java AdvancedResumeShortlister --build-store=FILE <resumes_directory>");
+            System.out.println("  java AdvancedResumeShortlister --store=FILE [--top=K] [--verify] <job_requirements_file>...");
+            System.out.println("Binary ranking (one page of a --format=binary result file, as CSV):");
+            System.out.println("  java AdvancedResumeShortlister --read-ranking=FILE [--page=N]");
+            System.out.println("Benchmarks (synthetic corpus: --corpus-size=N --resume-size=CHARS --skill-density=F --seed=S --samples=DIR):");
+            System.out.println("  java AdvancedResumeShortlister --bench [--bench-time=MS] [--bench-filter=NAME] [--bench-out=FILE] [--baseline=FILE] [--verify] [job_file]");
+            System.out.println("  java AdvancedResumeShortlister --generate-corpus=DIR");
+            System.out.println("Service (loopback HTTP; reloads technical_skills.txt/soft_skills.txt when they change):");
+            System.out.println("  java AdvancedResumeShortlister --serve=PORT");
             return;
         }
         
         AdvancedResumeShortlister shortlister = new AdvancedResumeShortlister();
         
         try {
-            // Load job requirements
-            JobRequirements requirements = shortlister.loadJobRequirements(args[0]);
-            shortlister.setCurrentJobRequirements(requirements);
+            configureExtractor(shortlister, options);
+            configureIngestion(shortlister, options);
+            shortlister.setOutputFormat(options.getOrDefault("format", "csv"));
+            if (options.containsKey("combined-csv") && shortlister.outputFormat.equals("binary")) {
+                throw new IllegalArgumentException("--combined-csv needs --format=csv or --format=jsonl");
+            }
+            if (options.containsKey("dedup")) {
+                if (options.containsKey("watch")) {
+                    throw new IllegalArgumentException("--dedup cannot be combined with --watch");
+                }
+                String similarity = options.get("dedup");
+                shortlister.setNearDuplicateIndex(new NearDuplicateIndex(
+                    similarity.equals("true") ? DEFAULT_DEDUP_THRESHOLD : Double.parseDouble(similarity)));
+            }
             
-            // Process resumes
-            List<Resume> resumes = shortlister.loadResumesFromDirectory(args[1]);
-            List<RankedResume> rankedResumes = shortlister.processResumes(resumes);
+            List<String> jobFiles = positional.subList(0, positional.size() - 1);
+            String resumesDirectory = positional.get(positional.size() - 1);
+            int topK = Integer.parseInt(options.getOrDefault("top", String.valueOf(DEFAULT_TOP_K)));
+            int queueDepth = Integer.parseInt(options.getOrDefault("queue-depth", String.valueOf(DEFAULT_QUEUE_DEPTH)));
             
-            // Display results
-            shortlister.displayResults(rankedResumes);
+            if (jobFiles.size() > 1) {
+                shortlister.runBatch(jobFiles, resumesDirectory, topK, queueDepth, options.containsKey("combined-csv"));
+            } else if (options.containsKey("watch")) {
+                shortlister.setCurrentJobRequirements(shortlister.loadJobRequirements(jobFiles.get(0)));
+                shortlister.watchDirectory(resumesDirectory, topK, queueDepth, shortlister.resultFile("shortlist_results"));
+            } else if (options.containsKey("stream")) {
+                shortlister.setCurrentJobRequirements(shortlister.loadJobRequirements(jobFiles.get(0)));
+                try (RankingSpill spill = options.containsKey("full-ranking") ? new RankingSpill(SPILL_BATCH_SIZE) : null) {
+                    List<RankedResume> topResumes = shortlister.rankDirectoryStreaming(resumesDirectory,
+                        List.of(shortlister.scoringPlan), topK, queueDepth, spill == null ? null : List.of(spill)).get(0);
+                    shortlister.displayResults(topResumes);
+                    if (spill != null) {
+                        shortlister.saveRankingToFile(shortlister.withoutDuplicates(spill.merge()),
+                            shortlister.resultFile("shortlist_results"));
+                    } else {
+                        shortlister.saveResultsToFile(topResumes, shortlister.resultFile("shortlist_results"));
+                    }
+                }
+            } else {
+                // Load job requirements
+                shortlister.setCurrentJobRequirements(shortlister.loadJobRequirements(jobFiles.get(0)));
+                
+                // Process resumes: reads overlap with extraction and scoring
+                List<RankedResume> rankedResumes = shortlister.rankDirectory(resumesDirectory, queueDepth);
+                
+                // Display results
+                shortlister.displayResults(rankedResumes);
+                
+                // Optional: Save results to file
+                shortlister.saveResultsToFile(rankedResumes, shortlister.resultFile("shortlist_results"));
+            }
             
-            // Optional: Save results to file
-            shortlister.saveResultsToFile(rankedResumes, "shortlist_results.csv");
+            if (shortlister.featureCache != null) {
+                System.out.println(shortlister.featureCache.getStatistics());
+            }
+            if (shortlister.nearDuplicates != null) {
+                System.out.print(shortlister.nearDuplicates.getStatistics());
+            }
+            shortlister.metrics.commitSummaryEvent();
+            if (options.containsKey("metrics")) {
+                System.out.print(shortlister.metrics.format());
+                Files.writeString(Paths.get(options.get("metrics")), shortlister.metrics.toJson());
+                System.out.println("Metrics written to " + options.get("metrics"));
+            }
             
         } catch (IOException e) {
             System.err.println("Error processing files: " + e.getMessage());
@@ -74,12 +249,15 @@ public class AdvancedResumeShortlister {
         }
     }
     
-    // Core processing method
+    // Core processing method. Largest resumes are submitted first on a work-stealing pool, so a
+    // long document does not start last; its chunks are forked into the same pool.
     public List<RankedResume> processResumes(List<Resume> resumes) {
-        ExecutorService executor = Executors.newFixedThreadPool(MAX_THREADS);
+        ExecutorService executor = Executors.newWorkStealingPool(MAX_THREADS);
         List<Future<RankedResume>> futures = new ArrayList<>();
+        List<Resume> largestFirst = new ArrayList<>(resumes);
+        largestFirst.sort(LARGEST_FIRST);
         
-        for (Resume resume : resumes) {
+        for (Resume resume : largestFirst) {
             futures.add(executor.submit(() -> processSingleResume(resume)));
         }
         
@@ -95,246 +273,5302 @@ public class AdvancedResumeShortlister {
         executor.shutdown();
         
         // Sort by score descending
-        results.sort(Comparator.comparingDouble(RankedResume::getScore).reversed());
+        results.sort(RANKING_ORDER);
         
         return results;
     }
     
-    private RankedResume processSingleResume(Resume resume) {
-        // Extract all features
-        ResumeFeatures features = extractFeatures(resume);
+    // Streaming pipeline: file walker -> bounded queue -> scoring workers -> per-worker top-K heaps.
+    // Each resume is extracted once and scored against every plan; memory depends on topK and
+    // queueDepth. The optional spills (one per plan) receive every ranked resume; near-duplicates
+    // are dropped when they are read back (see withoutDuplicates).
+    public List<List<RankedResume>> rankDirectoryStreaming(String dirPath, List<ScoringPlan> plans, int topK,
+                                                          int queueDepth, List<RankingSpill> spills)
+            throws IOException, InterruptedException {
+        List<List<TopKCollector>> partials = processDirectory(dirPath, queueDepth,
+            () -> {
+                List<TopKCollector> collectors = new ArrayList<>();
+                for (int j = 0; j < plans.size(); j++) {
+                    collectors.add(new TopKCollector(topK, nearDuplicates != null));
+                }
+                return collectors;
+            },
+            (collectors, resume) -> {
+                List<RankedResume> rankings = processSingleResume(resume, plans);
+                for (int j = 0; j < plans.size(); j++) {
+                    collectors.get(j).offer(rankings.get(j));
+                    if (spills != null) {
+                        spills.get(j).add(RankingEntry.of(rankings.get(j)));
+                    }
+                }
+            });
+        
+        List<TopKCollector> merged = new ArrayList<>();
+        for (int j = 0; j < plans.size(); j++) {
+            merged.add(new TopKCollector(topK, nearDuplicates != null));
+        }
+        for (List<TopKCollector> collectors : partials) {
+            for (int j = 0; j < plans.size(); j++) {
+                merged.get(j).addAll(collectors.get(j));
+            }
+        }
+        return merged.stream().map(TopKCollector::toSortedList).collect(Collectors.toList());
+    }
+    
+    // Full ranking through the staged pipeline; every ranked resume is kept, except that of
+    // near-duplicates (which share one ResumeFeatures) only the copy whose name sorts first is
+    public List<RankedResume> rankDirectory(String dirPath, int queueDepth) throws IOException, InterruptedException {
+        List<List<RankedResume>> partials = processDirectory(dirPath, queueDepth, ArrayList::new,
+            (rankings, resume) -> rankings.add(processSingleResume(resume)));
+        List<RankedResume> results = partials.stream().flatMap(List::stream).collect(Collectors.toList());
+        if (nearDuplicates != null) {
+            Map<ResumeFeatures, RankedResume> kept = new IdentityHashMap<>();
+            for (RankedResume rr : results) {
+                kept.merge(rr.getFeatures(), rr, (a, b) -> RANKING_ORDER.compare(a, b) <= 0 ? a : b);
+            }
+            results = new ArrayList<>(kept.values());
+        }
+        results.sort(RANKING_ORDER);
+        return results;
+    }
+    
+    // Spilled rankings hold every copy, as which one is kept is only known once all are read
+    Iterator<RankingEntry> withoutDuplicates(Iterator<RankingEntry> ranking) {
+        if (nearDuplicates == null) {
+            return ranking;
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(ranking, Spliterator.ORDERED), false)
+            .filter(entry -> !nearDuplicates.isDuplicate(entry.getName()))
+            .iterator();
+    }
+    
+    // Live ranking: one full pass, then only the files the WatchService reports are re-read and
+    // re-scored (deleted ones are dropped). Runs until interrupted. The top K are rewritten, via a
+    // temp file and an atomic rename, whenever they change.
+    public void watchDirectory(String dirPath, int topK, int queueDepth, String filename)
+            throws IOException, InterruptedException {
+        Path root = Paths.get(dirPath);
+        Path output = Paths.get(filename).toAbsolutePath();
+        LiveRanking ranking = new LiveRanking();
+        try (WatchService watchService = root.getFileSystem().newWatchService()) {
+            // Registered before the first pass, so files arriving during it are picked up afterwards
+            Map<WatchKey, Path> directories = new HashMap<>();
+            Set<Path> changed = new LinkedHashSet<>();
+            registerTree(root, watchService, directories, changed);
+            changed.clear();
+            
+            long start = System.nanoTime();
+            List<List<Map.Entry<Path, RankingEntry>>> partials = processDirectory(dirPath, queueDepth, ArrayList::new,
+                (entries, resume) -> entries.add(Map.entry(resume.getSource(), RankingEntry.of(processSingleResume(resume)))));
+            for (List<Map.Entry<Path, RankingEntry>> entries : partials) {
+                for (Map.Entry<Path, RankingEntry> entry : entries) {
+                    ranking.put(entry.getKey(), entry.getValue());
+                }
+            }
+            List<RankingEntry> top = ranking.top(topK);
+            writeLiveRanking(top, output);
+            System.out.printf("Ranked %d resumes in %d ms; watching %s for changes (Ctrl+C to stop)%n",
+                ranking.size(), (System.nanoTime() - start) / 1_000_000, root);
+            
+            while (true) {
+                // A copy or save is a burst of events; wait until the directory is quiet for a moment
+                WatchKey key = watchService.take();
+                boolean overflow = false;
+                do {
+                    Path directory = directories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else if (directory != null) {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        directories.remove(key);
+                    }
+                    key = watchService.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                
+                if (overflow) {
+                    // Events were lost: re-check every known file and everything on disk
+                    changed.addAll(ranking.paths());
+                    registerTree(root, watchService, directories, changed);
+                }
+                long batchStart = System.nanoTime();
+                List<String> report = new ArrayList<>();
+                for (Path path : changed) {
+                    updateLiveRanking(ranking, path, watchService, directories, changed, report);
+                }
+                changed.clear();
+                
+                List<RankingEntry> newTop = ranking.top(topK);
+                if (!newTop.equals(top)) {
+                    top = newTop;
+                    writeLiveRanking(top, output);
+                }
+                long micros = (System.nanoTime() - batchStart) / 1000;
+                for (String line : report) {
+                    System.out.println(line);
+                }
+                System.out.printf("%d change(s) applied in %.1f ms; %d resumes ranked%n",
+                    report.size(), micros / 1000.0, ranking.size());
+            }
+        }
+    }
+    
+    // New directories are watched too; their files may predate the registration, so they are queued
+    private static void registerTree(Path root, WatchService watchService, Map<WatchKey, Path> directories,
+                                     Set<Path> changed) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    directories.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), path);
+                } else if (isResumeFile(path)) {
+                    changed.add(path);
+                }
+            }
+        }
+    }
+    
+    private void updateLiveRanking(LiveRanking ranking, Path path, WatchService watchService,
+                                   Map<WatchKey, Path> directories, Set<Path> changed, List<String> report) {
+        try {
+            if (Files.isDirectory(path)) {
+                Set<Path> inside = new LinkedHashSet<>();
+                registerTree(path, watchService, directories, inside);
+                for (Path file : inside) {
+                    if (!changed.contains(file)) {
+                        updateLiveRanking(ranking, file, watchService, directories, changed, report);
+                    }
+                }
+            } else if (Files.isRegularFile(path) && isResumeFile(path)) {
+                RankingEntry entry = RankingEntry.of(processSingleResume(readResume(path)));
+                ranking.put(path, entry);
+                report.add(String.format("+ %s %.2f", entry.getName(), entry.getScore()));
+            } else if (!Files.exists(path)) {
+                // Deleted file or directory: drop it and every resume under it
+                for (RankingEntry removed : ranking.removeTree(path)) {
+                    report.add("- " + removed.getName());
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Usually still being written; its next modify event retries it
+            System.err.println("Error reading file: " + path);
+        } catch (RuntimeException e) {
+            System.err.println("Error processing resume " + path + ": " + e.getMessage());
+        }
+    }
+    
+    private void writeLiveRanking(List<RankingEntry> top, Path output) throws IOException {
+        long start = System.nanoTime();
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (RankingWriter writer = RankingWriter.open(temp, outputFormat, false)) {
+            writer.writeAll(null, top.iterator());
+        }
+        // Readers of the shortlist never see a half-written file
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        metrics.record(RunMetrics.OUTPUT, output.toString(), 0, start);
+    }
+    
+    public interface ResumeStep<T> {
+        void accept(T workerState, Resume resume) throws IOException;
+    }
+    
+    // Staged pipeline: the walker hands paths to an I/O stage (virtual threads where available)
+    // that reads and decodes them; a handoff queue feeds MAX_THREADS CPU workers, each folding
+    // resumes into its own state, largest waiting resume first. At most queueDepth files are being
+    // read or waiting for a worker.
+    // Per-file failures are reported and skipped; the worker states are returned for merging.
+    private <T> List<T> processDirectory(String dirPath, int queueDepth, Supplier<T> workerState, ResumeStep<T> step)
+            throws IOException, InterruptedException {
+        BlockingQueue<Resume> handoff = new PriorityBlockingQueue<>(queueDepth + MAX_THREADS, LARGEST_FIRST);
+        Semaphore pending = new Semaphore(queueDepth);
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService readers = newIoExecutor();
+        ExecutorService workers = Executors.newFixedThreadPool(MAX_THREADS);
+        List<Future<T>> partials = new ArrayList<>();
+        
+        for (int t = 0; t < MAX_THREADS; t++) {
+            partials.add(workers.submit(() -> {
+                T state = workerState.get();
+                for (Resume resume = handoff.take(); resume != END_OF_INPUT; resume = handoff.take()) {
+                    pending.release();
+                    metrics.recordQueueDepth(handoff.size());
+                    try {
+                        step.accept(state, resume);
+                    } catch (IOException | UncheckedIOException e) {
+                        failures.incrementAndGet();
+                        metrics.recordFailure();
+                        System.err.println("Error reading file: " + resume.getName());
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        metrics.recordFailure();
+                        System.err.println("Error processing resume " + resume.getName() + ": " + e.getMessage());
+                    }
+                }
+                return state;
+            }));
+        }
+        
+        // Walk on the calling thread; acquire() blocks while the CPU stage is behind
+        int fileCount = 0;
+        try (Stream<Path> paths = Files.walk(Paths.get(dirPath))) {
+            Iterator<Path> files = paths.filter(Files::isRegularFile)
+                                        .filter(AdvancedResumeShortlister::isResumeFile)
+                                        .filter(path -> shardFilter == null || shardFilter.test(path))
+                                        .iterator();
+            long walkStart = System.nanoTime();
+            while (files.hasNext()) {
+                Path path = files.next();
+                metrics.record(RunMetrics.WALK, path.toString(), 0, walkStart);
+                fileCount++;
+                pending.acquire();
+                readers.execute(() -> {
+                    try {
+                        // Never blocks: the permit reserves a slot
+                        handoff.add(readResume(path));
+                    } catch (IOException | RuntimeException e) {
+                        failures.incrementAndGet();
+                        metrics.recordFailure();
+                        pending.release();
+                        System.err.println("Error reading file: " + path);
+                    }
+                });
+                walkStart = System.nanoTime();
+            }
+        } finally {
+            readers.shutdown();
+            while (!readers.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Slow storage; keep waiting so every read lands before the end markers
+            }
+            for (int t = 0; t < MAX_THREADS; t++) {
+                handoff.put(END_OF_INPUT);
+            }
+            workers.shutdown();
+        }
+        
+        List<T> states = new ArrayList<>();
+        for (Future<T> partial : partials) {
+            try {
+                states.add(partial.get());
+            } catch (ExecutionException e) {
+                throw new IOException("Resume worker failed", e.getCause());
+            }
+        }
+        if (failures.get() > 0) {
+            System.err.printf("Skipped %d of %d resume files%n", failures.get(), fileCount);
+        }
+        return states;
+    }
+    
+    // Virtual threads where the runtime has them (Java 21+); otherwise a cached pool, which the
+    // pending-file permits keep at most queueDepth threads wide
+    private static ExecutorService newIoExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+    
+    // Runs until the JVM is stopped; the HTTP dispatcher thread keeps it alive
+    private static void runService(Map<String, String> options) {
+        try {
+            ShortlistService service = new ShortlistService(new AdvancedResumeShortlister(),
+                Integer.parseInt(options.get("serve")), Paths.get("technical_skills.txt"), Paths.get("soft_skills.txt"),
+                new KnowledgeBase(FEATURE_EXTRACTOR));
+            service.warmUp(2000);
+            Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+            service.start();
+            System.out.println("Listening on http://" + InetAddress.getLoopbackAddress().getHostAddress()
+                + ":" + service.getPort() + " (POST /rank, GET /health, POST /reload)");
+        } catch (IOException e) {
+            System.err.println("Error starting service: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    // Benchmarks over a generated corpus, or just write that corpus to disk
+    private static void runBenchmarks(Map<String, String> options, List<String> positional) {
+        AdvancedResumeShortlister shortlister = new AdvancedResumeShortlister();
+        Path corpusDirectory = null;
+        try {
+            double skillDensity = Double.parseDouble(options.getOrDefault("skill-density", "0.05"));
+            CorpusGenerator generator = new CorpusGenerator(
+                Long.parseLong(options.getOrDefault("seed", "42")),
+                Integer.parseInt(options.getOrDefault("resume-size", "4000")),
+                skillDensity,
+                Paths.get(options.getOrDefault("samples", "resume")),
+                SKILL_AUTOMATON);
+            int corpusSize = Integer.parseInt(options.getOrDefault("corpus-size", "500"));
+            
+            if (options.containsKey("generate-corpus")) {
+                Path directory = Paths.get(options.get("generate-corpus"));
+                generator.writeCorpus(directory, corpusSize);
+                System.out.println("Wrote " + corpusSize + " resumes to " + directory);
+                return;
+            }
+            
+            shortlister.setCurrentJobRequirements(shortlister.loadJobRequirements(
+                positional.isEmpty() ? "job_requirements.txt" : positional.get(0)));
+            ScoringPlan plan = shortlister.scoringPlan;
+            List<String> corpus = new ArrayList<>(corpusSize);
+            List<ByteBuffer> encoded = new ArrayList<>(corpusSize);
+            long corpusChars = 0;
+            for (int i = 0; i < corpusSize; i++) {
+                corpus.add(generator.generate(i));
+                encoded.add(ByteBuffer.wrap(corpus.get(i).getBytes(StandardCharsets.UTF_8)));
+                corpusChars += corpus.get(i).length();
+            }
+            double averageSize = (double) corpusChars / corpusSize;
+            List<ResumeFeatures> features = corpus.stream().map(FEATURE_EXTRACTOR::extract).collect(Collectors.toList());
+            System.out.printf(Locale.ROOT, "Corpus: %d resumes, %.0f chars on average, skill density %.3f%n",
+                corpusSize, averageSize, skillDensity);
+            if (options.containsKey("verify")) {
+                int mismatches = verifyByteIngestion(corpus, Long.parseLong(options.getOrDefault("seed", "42")));
+                if (mismatches > 0) {
+                    throw new IllegalStateException(mismatches + " resumes extract differently from their UTF-8 bytes");
+                }
+                System.out.println("Byte ingestion matches string ingestion, with non-ASCII skills mixed in");
+            }
+            
+            BenchmarkSuite suite = new BenchmarkSuite(
+                Long.parseLong(options.getOrDefault("bench-time", "1000")), options.get("bench-filter"));
+            
+            // Skill matching alone
+            suite.measure("match/automaton", "docs", averageSize, true, i -> {
+                long[] hits = new long[1];
+                SKILL_AUTOMATON.findAll(corpus.get(i % corpusSize), (skillId, start, end) -> hits[0]++);
+                return hits[0];
+            });
+            suite.measure("match/regex", "docs", averageSize, true, i -> {
+                Matcher matcher = LegacyPatterns.SKILL_PATTERN.matcher(corpus.get(i % corpusSize));
+                long hits = 0;
+                while (matcher.find()) {
+                    hits++;
+                }
+                return hits;
+            });
+            
+            // Full feature extraction
+            suite.measure("extract/fused", "docs", averageSize, true,
+                i -> FEATURE_EXTRACTOR.extract(corpus.get(i % corpusSize)).getSkillIds().length);
+            suite.measure("extract/fused-bytes", "docs", averageSize, true,
+                i -> FEATURE_EXTRACTOR.extract(new Utf8Text(encoded.get(i % corpusSize))).getSkillIds().length);
+            suite.measure("extract/regex", "docs", averageSize, true,
+                i -> shortlister.extractFeaturesWithRegex(new Resume("bench", corpus.get(i % corpusSize))).getSkillIds().length);
+            
+            // The whole corpus as one document: single pass vs parallel chunks
+            String bundle = String.join("\n", corpus);
+            suite.measure("extract/bundle", "docs", bundle.length(), true,
+                i -> FEATURE_EXTRACTOR.extract(bundle, Integer.MAX_VALUE).getSkillIds().length);
+            suite.measure("extract/bundle-chunked", "docs", bundle.length(), true,
+                i -> FEATURE_EXTRACTOR.extract(bundle, FeatureExtractor.CHUNK_SIZE).getSkillIds().length);
+            
+            // Scoring of already extracted features
+            suite.measure("score", "docs", 0, true,
+                i -> Double.doubleToLongBits(plan.score(features.get(i % corpusSize))));
+            
+            // Knowledge base compilation
+            suite.measure("compile/skill-pattern", "compiles", 0, true,
+                i -> buildSkillPattern().pattern().length());
+            Set<String> technicalSkills = readSkills(TECHNICAL_SKILLS_FILE);
+            Set<String> softSkills = readSkills(SOFT_SKILLS_FILE);
+            suite.measure("compile/automaton", "compiles", 0, true,
+                i -> new FeatureExtractor(technicalSkills, softSkills, DEGREE_TYPES, FIELDS_OF_STUDY,
+                                          TECH_CERTIFICATIONS).getAutomaton().getSkillCount());
+            Path artifact = Files.createTempFile("shortlister", ".rskb");
+            try {
+                CompiledKnowledgeBase.write(artifact, FEATURE_EXTRACTOR, List.of());
+                suite.measure("compile/load-artifact", "loads", 0, true,
+                    i -> CompiledKnowledgeBase.loadIfCurrent(artifact).getAutomaton().getSkillCount());
+            } finally {
+                Files.deleteIfExists(artifact);
+            }
+            
+            // End to end over files on disk; one operation ranks the whole corpus on all cores
+            corpusDirectory = Files.createTempDirectory("resume-bench");
+            generator.writeCorpus(corpusDirectory, corpusSize);
+            String directory = corpusDirectory.toString();
+            suite.measure("e2e/load", "corpora", corpusChars, false,
+                i -> shortlister.loadResumesFromDirectory(directory).size());
+            suite.measure("e2e/rank", "corpora", corpusChars, false,
+                i -> shortlister.rankDirectory(directory, DEFAULT_QUEUE_DEPTH).size());
+            shortlister.setByteIngestion(true);
+            suite.measure("e2e/rank-bytes", "corpora", corpusChars, false,
+                i -> shortlister.rankDirectory(directory, DEFAULT_QUEUE_DEPTH).size());
+            
+            if (options.containsKey("baseline")) {
+                suite.compareWithBaseline(Paths.get(options.get("baseline")));
+            }
+            Path output = Paths.get(options.getOrDefault("bench-out", "benchmark_results.csv"));
+            suite.writeResults(output);
+            System.out.println("Results written to " + output);
+        } catch (IOException e) {
+            System.err.println("Error processing files: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (corpusDirectory != null) {
+                try (Stream<Path> paths = Files.walk(corpusDirectory)) {
+                    paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                } catch (IOException e) {
+                    System.err.println("Could not remove " + corpusDirectory);
+                }
+            }
+        }
+    }
+    
+    // Non-ASCII skills for --bench --verify, with 2-, 3- and 4-byte characters
+    private static final String[] NON_ASCII_SKILLS = {
+        "Caf\u00e9", "Na\u00efve Bayes", "\u65e5\u672c\u8a9e NLP", "\ud835\udd3bata Ops"
+    };
+    // Words that only start or end like a skill, other non-ASCII neighbours, and a line separator
+    // that ends a project
+    private static final String[] NON_ASCII_WORDS = {
+        "Caf\u00e9s", "\u00e9Java", "Java\u00e9", "na\u00efve bayes", "NA\u00cfVE BAYES", "\u65e5\u672c\u8a9e",
+        "\ud835\udd3bata Opsy", "Stra\u00dfe", "\ud83d\ude80", "\u00a0Docker\u00a0", "Project: caf\u00e9\u2028Spring"
+    };
+    
+    // Byte ingestion has to extract what decoding first does. Random words of each resume are
+    // swapped for non-ASCII ones, which is extracted whole and in small chunks both ways; hit
+    // offsets are compared as bytes. Returns the resumes that differ.
+    private static int verifyByteIngestion(List<String> corpus, long seed) throws IOException {
+        Set<String> technicalSkills = new HashSet<>(readSkills(TECHNICAL_SKILLS_FILE));
+        technicalSkills.addAll(Arrays.asList(NON_ASCII_SKILLS));
+        FeatureExtractor extractor = new FeatureExtractor(technicalSkills, readSkills(SOFT_SKILLS_FILE),
+            DEGREE_TYPES, FIELDS_OF_STUDY, TECH_CERTIFICATIONS);
+        Random random = new Random(seed);
+        int mismatches = 0;
+        for (String resume : corpus) {
+            String[] words = resume.split(" ", -1);
+            for (int w = 0; w < words.length; w++) {
+                if (random.nextInt(8) == 0) {
+                    int pick = random.nextInt(NON_ASCII_SKILLS.length + NON_ASCII_WORDS.length);
+                    words[w] = pick < NON_ASCII_SKILLS.length
+                        ? NON_ASCII_SKILLS[pick] : NON_ASCII_WORDS[pick - NON_ASCII_SKILLS.length];
+                }
+            }
+            String text = String.join(" ", words);
+            // Byte offset of each char as Utf8Text reads it: a surrogate pair at the lead byte and the next
+            int[] byteOffsets = new int[text.length() + 1];
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                byteOffsets[i + 1] = byteOffsets[i] + (c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 1 : 3);
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            for (int chunkSize : new int[] {Integer.MAX_VALUE, 512}) {
+                ResumeFeatures decoded = extractor.extract(text, chunkSize);
+                ResumeFeatures raw = extractor.extract(new Utf8Text(bytes), chunkSize);
+                int[] positions = Arrays.stream(decoded.getHitPositions()).map(p -> byteOffsets[p]).toArray();
+                if (!Arrays.equals(decoded.getSkillIds(), raw.getSkillIds())
+                        || !Arrays.equals(decoded.getSkillCounts(), raw.getSkillCounts())
+                        || !Arrays.equals(positions, raw.getHitPositions())
+                        || decoded.getYearsExperience() != raw.getYearsExperience()
+                        || !decoded.getEducation().equals(raw.getEducation())
+                        || !decoded.getCertifications().equals(raw.getCertifications())
+                        || !decoded.getProjects().equals(raw.getProjects())) {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+        return mismatches;
+    }
+    
+    private static void configureExtractor(AdvancedResumeShortlister shortlister, Map<String, String> options) {
+        String extractor = options.getOrDefault("extractor", "fused");
+        if (!extractor.equals("fused") && !extractor.equals("regex")) {
+            throw new IllegalArgumentException("Unknown extractor: " + extractor);
+        }
+        shortlister.setRegexExtraction(extractor.equals("regex"));
+    }
+    
+    // Hit offsets are char indices for decoded resumes and byte offsets for byte ingestion,
+    // so each mode gets its own cache namespace
+    private static void configureIngestion(AdvancedResumeShortlister shortlister, Map<String, String> options)
+            throws IOException {
+        String ingest = options.getOrDefault("ingest", "string");
+        if (!ingest.equals("string") && !ingest.equals("bytes")) {
+            throw new IllegalArgumentException("Unknown ingestion mode: " + ingest);
+        }
+        shortlister.setByteIngestion(ingest.equals("bytes"));
+        if (options.containsKey("cache-dir")) {
+            String namespace = FEATURE_EXTRACTOR.getVersion() + (ingest.equals("bytes") ? "-utf8" : "");
+            shortlister.setFeatureCache(new FeatureCache(Paths.get(options.get("cache-dir")), namespace,
+                FEATURE_EXTRACTOR.getAutomaton().getSkillCount()));
+        }
+    }
+    
+    // Index commands: build from a resume directory, or answer a skill-weighted top-K query
+    private static void runIndexCommand(Map<String, String> options, List<String> positional) {
+        AdvancedResumeShortlister shortlister = new AdvancedResumeShortlister();
+        try {
+            if (options.containsKey("build-index")) {
+                if (positional.size() != 1) {
+                    throw new IllegalArgumentException("--build-index expects exactly one resumes directory");
+                }
+                configureIngestion(shortlister, options);
+                int queueDepth = Integer.parseInt(options.getOrDefault("queue-depth", String.valueOf(DEFAULT_QUEUE_DEPTH)));
+                Path indexFile = Paths.get(options.get("build-index"));
+                int indexed = shortlister.buildSkillIndex(positional.get(0), indexFile, queueDepth);
+                System.out.println("Indexed " + indexed + " resumes into " + indexFile);
+                return;
+            }
+            
+            if (!options.containsKey("index")) {
+                throw new IllegalArgumentException("--query needs --index=FILE");
+            }
+            Map<String, Double> weights = parseSkillQuery(options.get("query"));
+            int topK = Integer.parseInt(options.getOrDefault("top", String.valueOf(DEFAULT_TOP_K)));
+            try (SkillIndex index = SkillIndex.open(Paths.get(options.get("index")))) {
+                QueryResult result = index.query(weights, topK);
+                System.out.printf("Top %d of %d indexed resumes (%d scored):%n",
+                    result.getHits().size(), index.getDocumentCount(), result.getScoredDocuments());
+                int rank = 1;
+                for (IndexHit hit : result.getHits()) {
+                    System.out.printf("%d. %s - Score: %.2f%n", rank++, hit.getName(), hit.getScore());
+                }
+                if (options.containsKey("verify")) {
+                    QueryResult scan = index.scan(weights, topK);
+                    if (!sameHits(result, scan)) {
+                        throw new IllegalStateException("Index query disagrees with the full scan");
+                    }
+                    System.out.printf("Verified against a full scan (%d resumes matched a query skill)%n",
+                        scan.getScoredDocuments());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error processing files: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    // Sharded runs: --shards=N coordinates, --shard=i/N (started by the coordinator) ranks one shard
+    private static void runShardCommand(Map<String, String> options, List<String> positional) {
+        AdvancedResumeShortlister shortlister = new AdvancedResumeShortlister();
+        try {
+            if (positional.size() != 2) {
+                throw new IllegalArgumentException("Sharded runs take one job requirements file and one resumes directory");
+            }
+            if (options.containsKey("dedup") || options.containsKey("watch")) {
+                throw new IllegalArgumentException("--dedup and --watch cannot be combined with sharding");
+            }
+            int topK = Integer.parseInt(options.getOrDefault("top", String.valueOf(DEFAULT_TOP_K)));
+            int queueDepth = Integer.parseInt(options.getOrDefault("queue-depth", String.valueOf(DEFAULT_QUEUE_DEPTH)));
+            boolean fullRanking = options.containsKey("full-ranking");
+            
+            if (options.containsKey("shard")) {
+                String[] spec = options.get("shard").split("/");
+                int shard = Integer.parseInt(spec[0]);
+                int shardCount = spec.length == 2 ? Integer.parseInt(spec[1]) : 0;
+                if (shardCount < 1 || shard < 0 || shard >= shardCount || !options.containsKey("shard-out")) {
+                    throw new IllegalArgumentException("Expected --shard=i/N with 0 <= i < N and --shard-out=FILE");
+                }
+                configureExtractor(shortlister, options);
+                configureIngestion(shortlister, options);
+                shortlister.setCurrentJobRequirements(shortlister.loadJobRequirements(positional.get(0)));
+                Path output = Paths.get(options.get("shard-out"));
+                int ranked = shortlister.rankShard(positional.get(1), shard, shardCount, topK, queueDepth, fullRanking, output);
+                System.out.printf("Shard %d/%d: wrote %d ranked resumes to %s%n", shard, shardCount, ranked, output);
+                return;
+            }
+            
+            int shardCount = Integer.parseInt(options.get("shards"));
+            int retries = Integer.parseInt(options.getOrDefault("shard-retries", "2"));
+            if (shardCount < 1 || retries < 0) {
+                throw new IllegalArgumentException("--shards must be positive and --shard-retries not negative");
+            }
+            List<String> workerOptions = new ArrayList<>();
+            for (String option : List.of("extractor", "ingest", "cache-dir", "queue-depth", "top", "full-ranking")) {
+                if (options.containsKey(option)) {
+                    String value = options.get(option);
+                    workerOptions.add("--" + option + (value.equals("true") ? "" : "=" + value));
+                }
+            }
+            shortlister.setOutputFormat(options.getOrDefault("format", "csv"));
+            shortlister.coordinateShards(positional.get(0), positional.get(1), shardCount, retries, topK, fullRanking,
+                workerOptions, shortlister.resultFile("shortlist_results"));
+        } catch (IOException e) {
+            System.err.println("Error processing files: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    // Prints one page of a binary ranking as CSV, ranks included
+    private static void readRanking(Map<String, String> options) {
+        try (RankingFile ranking = new RankingFile(Paths.get(options.get("read-ranking")))) {
+            int page = Integer.parseInt(options.getOrDefault("page", "0"));
+            if (page < 0 || page >= Math.max(1, ranking.getPageCount())) {
+                throw new IllegalArgumentException("--page must be between 0 and " + (ranking.getPageCount() - 1));
+            }
+            System.out.printf("Page %d of %d (%d entries, %d per page)%n", page, ranking.getPageCount(), ranking.size(),
+                ranking.getPageSize());
+            RankingWriter writer = new CsvRankingWriter(
+                new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)), false);
+            int rank = page * ranking.getPageSize();
+            List<RankingEntry> entries = ranking.getPageCount() == 0 ? List.of() : ranking.readPage(page);
+            for (RankingEntry entry : entries) {
+                writer.write(null, ++rank, entry);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error processing files: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    // Feature store commands: extract once into columns, then re-rank for any job file
+    private static void runStoreCommand(Map<String, String> options, List<String> positional) {
+        AdvancedResumeShortlister shortlister = new AdvancedResumeShortlister();
+        try {
+            if (options.containsKey("build-store")) {
+                if (positional.size() != 1) {
+                    throw new IllegalArgumentException("--build-store expects exactly one resumes directory");
+                }
+                configureIngestion(shortlister, options);
+                int queueDepth = Integer.parseInt(options.getOrDefault("queue-depth", String.valueOf(DEFAULT_QUEUE_DEPTH)));
+                Path storeFile = Paths.get(options.get("build-store"));
+                int stored = shortlister.buildFeatureStore(positional.get(0), storeFile, queueDepth);
+                System.out.println("Stored features of " + stored + " resumes in " + storeFile);
+                return;
+            }
+            
+            if (positional.isEmpty()) {
+                throw new IllegalArgumentException("--store expects at least one job requirements file");
+            }
+            int topK = Integer.parseInt(options.getOrDefault("top", String.valueOf(DEFAULT_TOP_K)));
+            shortlister.setOutputFormat(options.getOrDefault("format", "csv"));
+            try (FeatureStore store = FeatureStore.open(Paths.get(options.get("store")), FEATURE_EXTRACTOR.getVersion())) {
+                for (String jobFile : positional) {
+                    ScoringPlan plan = ScoringPlan.compile(shortlister.loadJobRequirements(jobFile), SKILL_AUTOMATON);
+                    long start = System.nanoTime();
+                    double[] scores = store.score(plan);
+                    List<RankingEntry> top = store.top(scores, topK, SKILL_AUTOMATON);
+                    System.out.printf("%s: re-scored %d stored resumes in %.1f ms%n",
+                        jobFile, store.getDocumentCount(), (System.nanoTime() - start) / 1e6);
+                    int rank = 1;
+                    for (RankingEntry entry : top) {
+                        System.out.printf("%d. %s - Score: %.2f%n", rank++, entry.getName(), entry.getScore());
+                    }
+                    if (options.containsKey("verify")) {
+                        int mismatches = store.verify(plan, scores);
+                        if (mismatches > 0) {
+                            throw new IllegalStateException(mismatches + " stored scores disagree with ScoringPlan.score");
+                        }
+                        System.out.println("Verified every score against ScoringPlan.score");
+                    }
+                    String name = Paths.get(jobFile).getFileName().toString().replaceFirst("\\.[^.]*$", "");
+                    shortlister.saveRankingToFile(top.iterator(), shortlister.resultFile(
+                        positional.size() == 1 ? "shortlist_results" : "shortlist_results_" + name));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error processing files: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    // One shard: the files whose relative path hashes to it, ranked like a single-process run and
+    // written as a sorted run (top K, or everything with fullRanking). The run is moved into place
+    // only once complete, so a crashed worker never leaves a partial behind.
+    public int rankShard(String dirPath, int shard, int shardCount, int topK, int queueDepth, boolean fullRanking,
+                         Path output) throws IOException, InterruptedException {
+        Path root = Paths.get(dirPath);
+        shardFilter = path -> shardOf(root.relativize(path), shardCount) == shard;
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (RankingSpill spill = fullRanking ? new RankingSpill(SPILL_BATCH_SIZE) : null) {
+            List<RankedResume> top = rankDirectoryStreaming(dirPath, List.of(scoringPlan), topK, queueDepth,
+                spill == null ? null : List.of(spill)).get(0);
+            int count = spill != null ? spill.size() : top.size();
+            RankingSpill.writeRun(temp, count,
+                spill != null ? spill.merge() : top.stream().map(RankingEntry::of).iterator());
+            Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return count;
+        } finally {
+            shardFilter = null;
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    // Stable across JVMs and hosts: String.hashCode of the '/'-separated path below the resumes directory
+    static int shardOf(Path relative, int shardCount) {
+        String key = relative.toString().replace(File.separatorChar, '/');
+        return Math.floorMod(key.hashCode() * 0x9E3779B9, shardCount);
+    }
+    
+    // Runs every shard as a child JVM, retries failed shards on their own, then merges the sorted
+    // partial rankings. Each shard keeps its own top K, so the merged top K (or, with fullRanking,
+    // the merged full ranking) is the one a single process would write.
+    public void coordinateShards(String jobFile, String dirPath, int shardCount, int retries, int topK,
+                                 boolean fullRanking, List<String> workerOptions, String filename)
+            throws IOException, InterruptedException {
+        loadJobRequirements(jobFile);   // fail fast on a bad job file, before any worker starts
+        Path work = Files.createTempDirectory("shortlister-shards");
+        List<Path> partials = new ArrayList<>();
+        List<Path> logs = new ArrayList<>();
+        Map<Integer, Process> running = new TreeMap<>();
+        int[] attempts = new int[shardCount];
+        long start = System.nanoTime();
+        List<Closeable> openRuns = new ArrayList<>();
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                partials.add(work.resolve("shard-" + i + ".bin"));
+                logs.add(work.resolve("shard-" + i + ".log"));
+                running.put(i, startShard(i, shardCount, jobFile, dirPath, partials.get(i), logs.get(i), workerOptions));
+                attempts[i] = 1;
+            }
+            while (!running.isEmpty()) {
+                for (Map.Entry<Integer, Process> shard : new ArrayList<>(running.entrySet())) {
+                    int i = shard.getKey();
+                    if (!shard.getValue().waitFor(50, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                    int exitCode = shard.getValue().exitValue();
+                    if (exitCode == 0 && Files.exists(partials.get(i))) {
+                        running.remove(i);
+                    } else if (attempts[i] <= retries) {
+                        System.err.printf("Shard %d failed (exit code %d); retrying (attempt %d of %d)%n",
+                            i, exitCode, attempts[i] + 1, retries + 1);
+                        attempts[i]++;
+                        running.put(i, startShard(i, shardCount, jobFile, dirPath, partials.get(i), logs.get(i), workerOptions));
+                    } else {
+                        List<String> log = Files.readAllLines(logs.get(i));
+                        log.subList(0, Math.max(0, log.size() - 10)).clear();
+                        log.forEach(line -> System.err.println("  shard " + i + ": " + line));
+                        throw new IOException("Shard " + i + " failed after " + attempts[i] + " attempts");
+                    }
+                }
+            }
+            System.out.printf("%d shards finished in %d ms%n", shardCount, (System.nanoTime() - start) / 1_000_000);
+            
+            Iterator<RankingEntry> merged = RankingSpill.mergeRuns(partials, openRuns);
+            List<RankingEntry> head = new ArrayList<>();
+            saveRankingToFile(new Iterator<RankingEntry>() {
+                private int returned;
+                
+                @Override
+                public boolean hasNext() {
+                    return (fullRanking || returned < topK) && merged.hasNext();
+                }
+                
+                @Override
+                public RankingEntry next() {
+                    RankingEntry entry = merged.next();
+                    if (returned++ < 10) {
+                        head.add(entry);
+                    }
+                    return entry;
+                }
+            }, filename);
+            
+            System.out.println("\nTop Candidates:");
+            for (int i = 0; i < head.size(); i++) {
+                RankingEntry entry = head.get(i);
+                System.out.printf("%d\t%s\t%.2f\t%s%n", i + 1, entry.getName(), entry.getScore(),
+                    entry.getTopSkills().replace(";", ", "));
+            }
+        } finally {
+            running.values().forEach(Process::destroyForcibly);
+            for (Closeable run : openRuns) {
+                run.close();
+            }
+            try (Stream<Path> files = Files.list(work)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(work);
+        }
+    }
+    
+    private static Process startShard(int shard, int shardCount, String jobFile, String dirPath, Path output, Path log,
+                                      List<String> workerOptions) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(AdvancedResumeShortlister.class.getName());
+        command.add("--shard=" + shard + "/" + shardCount);
+        command.add("--shard-out=" + output);
+        command.addAll(workerOptions);
+        command.add(jobFile);
+        command.add(dirPath);
+        return new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()))
+            .start();
+    }
+    
+    public int buildFeatureStore(String dirPath, Path storeFile, int queueDepth) throws IOException, InterruptedException {
+        List<List<StoredResume>> partials = processDirectory(dirPath, queueDepth, ArrayList::new,
+            (documents, resume) -> documents.add(new StoredResume(resume.getName(), extractFeatures(resume))));
+        List<StoredResume> documents = partials.stream().flatMap(List::stream).collect(Collectors.toList());
+        FeatureStore.write(storeFile, documents, SKILL_AUTOMATON.getSkillCount(), FEATURE_EXTRACTOR.getVersion());
+        return documents.size();
+    }
+    
+    // Extracts every resume once and writes its skill counts to an inverted index
+    public int buildSkillIndex(String dirPath, Path indexFile, int queueDepth) throws IOException, InterruptedException {
+        List<List<IndexedResume>> partials = processDirectory(dirPath, queueDepth, ArrayList::new,
+            (documents, resume) -> documents.add(new IndexedResume(resume.getName(), extractFeatures(resume))));
+        List<IndexedResume> documents = partials.stream().flatMap(List::stream).collect(Collectors.toList());
+        SkillIndex.write(indexFile, documents, SKILL_AUTOMATON);
+        return documents.size();
+    }
+    
+    // "Java:10,AWS:7,Docker" -> weights; a skill without a weight counts 1
+    private static Map<String, Double> parseSkillQuery(String spec) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (String term : spec.split(",")) {
+            term = term.trim();
+            if (term.isEmpty()) {
+                continue;
+            }
+            int colon = term.lastIndexOf(':');
+            String skill = term;
+            double weight = 1;
+            if (colon > 0) {
+                try {
+                    weight = Double.parseDouble(term.substring(colon + 1).trim());
+                    skill = term.substring(0, colon).trim();
+                } catch (NumberFormatException e) {
+                    // A colon inside the skill name
+                }
+            }
+            weights.merge(skill, weight, Double::sum);
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Empty skill query");
+        }
+        return weights;
+    }
+    
+    private static boolean sameHits(QueryResult a, QueryResult b) {
+        if (a.getHits().size() != b.getHits().size()) {
+            return false;
+        }
+        for (int i = 0; i < a.getHits().size(); i++) {
+            IndexHit x = a.getHits().get(i);
+            IndexHit y = b.getHits().get(i);
+            if (!x.getName().equals(y.getName()) || Double.compare(x.getScore(), y.getScore()) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Batch mode: one pass over the resumes, one ranking per job file
+    public void runBatch(List<String> jobFiles, String resumesDirectory, int topK, int queueDepth,
+                         boolean combinedCsv) throws IOException, InterruptedException {
+        List<String> jobNames = new ArrayList<>();
+        List<ScoringPlan> plans = new ArrayList<>();
+        List<RankingSpill> spills = new ArrayList<>();
+        for (String jobFile : jobFiles) {
+            String name = Paths.get(jobFile).getFileName().toString().replaceFirst("\\.[^.]*$", "");
+            jobNames.add(name);
+            plans.add(ScoringPlan.compile(loadJobRequirements(jobFile), SKILL_AUTOMATON));
+            spills.add(new RankingSpill(SPILL_BATCH_SIZE));
+        }
+        
+        try {
+            List<List<RankedResume>> topResumes = rankDirectoryStreaming(resumesDirectory, plans, topK, queueDepth, spills);
+            for (int j = 0; j < plans.size(); j++) {
+                System.out.println("\n=== " + jobNames.get(j) + " ===");
+                printTopCandidates(topResumes.get(j));
+            }
+            
+            if (combinedCsv) {
+                List<Iterator<RankingEntry>> rankings = new ArrayList<>();
+                for (RankingSpill spill : spills) {
+                    rankings.add(withoutDuplicates(spill.merge()));
+                }
+                saveCombinedRankingToFile(jobNames, rankings, resultFile("shortlist_results"));
+            } else {
+                for (int j = 0; j < plans.size(); j++) {
+                    saveRankingToFile(withoutDuplicates(spills.get(j).merge()), resultFile("shortlist_results_" + jobNames.get(j)));
+                }
+            }
+        } finally {
+            for (RankingSpill spill : spills) {
+                spill.close();
+            }
+        }
+    }
+    
+    private RankedResume processSingleResume(Resume resume) {
+        return processSingleResume(resume, List.of(scoringPlan)).get(0);
+    }
+    
+    // Extract once, then score against each plan (the analysis text is built on request)
+    private List<RankedResume> processSingleResume(Resume resume, List<ScoringPlan> plans) {
+        // Extract all features
+        long start = System.nanoTime();
+        ResumeFeatures features = extractFeatures(resume);
+        
+        // Calculate scores
+        long scoreStart = System.nanoTime();
+        List<RankedResume> rankings = new ArrayList<>(plans.size());
+        for (ScoringPlan plan : plans) {
+            rankings.add(new RankedResume(resume, features, calculateScore(features, plan), plan));
+        }
+        metrics.record(RunMetrics.SCORE, resume.getName(), 0, scoreStart);
+        metrics.recordResume(resume.getName(), System.nanoTime() - start);
+        return rankings;
+    }
+    
+    private ResumeFeatures extractFeatures(Resume resume) {
+        if (!regexExtraction && !resume.isLoaded()) {
+            return extractFeaturesFromBytes(resume);
+        }
+        long start = System.nanoTime();
+        Supplier<ResumeFeatures> extract;
+        if (regexExtraction) {
+            extract = () -> extractFeaturesWithRegex(resume);
+        } else if (featureCache != null) {
+            extract = () -> featureCache.getOrExtract(resume.getContent(), FEATURE_EXTRACTOR::extract);
+        } else {
+            extract = () -> FEATURE_EXTRACTOR.extract(resume.getContent());
+        }
+        ResumeFeatures features = nearDuplicates != null
+            ? nearDuplicates.getOrExtract(resume, resume.getContent(), extract)
+            : extract.get();
+        metrics.record(RunMetrics.EXTRACT, resume.getName(), 0, start);
+        return features;
+    }
+    
+    // Byte ingestion: match on the raw UTF-8 bytes, decoding only the kept hits
+    private ResumeFeatures extractFeaturesFromBytes(Resume resume) {
+        long start = System.nanoTime();
+        ByteBuffer bytes;
+        try {
+            bytes = ByteIngest.read(resume.getSource());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        metrics.record(RunMetrics.READ, resume.getName(), bytes.remaining(), start);
+        try {
+            long extractStart = System.nanoTime();
+            Supplier<ResumeFeatures> extract = featureCache != null
+                ? () -> featureCache.getOrExtract(bytes, () -> FEATURE_EXTRACTOR.extract(new Utf8Text(bytes)))
+                : () -> FEATURE_EXTRACTOR.extract(new Utf8Text(bytes));
+            ResumeFeatures features = nearDuplicates != null
+                ? nearDuplicates.getOrExtract(resume, new Utf8Text(bytes), extract)
+                : extract.get();
+            metrics.record(RunMetrics.EXTRACT, resume.getName(), 0, extractStart);
+            return features;
+        } finally {
+            ByteIngest.release(bytes);
+        }
+    }
+    
+    // One scan per feature type; kept to cross-check the fused extractor
+    private ResumeFeatures extractFeaturesWithRegex(Resume resume) {
+        String content = resume.getContent();
+        ResumeFeatures.Builder features = new ResumeFeatures.Builder();
+        
+        // Extract skill hits (canonical skill id and offset)
+        Matcher skillMatcher = LegacyPatterns.SKILL_PATTERN.matcher(content);
+        while (skillMatcher.find()) {
+            int skillId = SKILL_AUTOMATON.getSkillId(skillMatcher.group(1));
+            features.addSkillHit(skillId, skillMatcher.start());
+        }
+        
+        // Extract experience
+        Matcher expMatcher = LegacyPatterns.EXPERIENCE_PATTERN.matcher(content);
+        if (expMatcher.find()) {
+            features.setYearsExperience(Integer.parseInt(expMatcher.group(1)));
+        }
+        
+        // Extract education
+        Matcher eduMatcher = LegacyPatterns.EDUCATION_PATTERN.matcher(content);
+        while (eduMatcher.find()) {
+            features.addEducation(eduMatcher.group());
+        }
+        
+        // Extract certifications
+        Matcher certMatcher = LegacyPatterns.CERTIFICATION_PATTERN.matcher(content);
+        while (certMatcher.find()) {
+            features.addCertification(certMatcher.group());
+        }
+        
+        // Extract projects
+        Matcher projectMatcher = LegacyPatterns.PROJECT_PATTERN.matcher(content);
+        while (projectMatcher.find()) {
+            features.addProject(projectMatcher.group(1));
+        }
+        
+        return features.build();
+    }
+    
+    private double calculateScore(ResumeFeatures features, ScoringPlan plan) {
+        return plan.score(features);
+    }
+    
+    private static String generateAnalysis(ResumeFeatures features, ScoringPlan plan) {
+        StringBuilder analysis = new StringBuilder();
+        
+        // Skills analysis
+        analysis.append("Skills Matching:\n");
+        for (int skillId : plan.getRequiredSkillIds()) {
+            int count = features.getSkillCount(skillId);
+            if (count > 0) {
+                analysis.append(String.format("- %s: %d mentions\n", plan.getAutomaton().getSkillName(skillId), count));
+            }
+        }
+        
+        // Experience analysis
+        analysis.append(String.format("\nExperience: %d years\n", features.getYearsExperience()));
+        
+        // Education analysis
+        if (!features.getEducation().isEmpty()) {
+            analysis.append("\nEducation:\n");
+            features.getEducation().forEach(edu -> analysis.append("- ").append(edu).append("\n"));
+        }
+        
+        // Certifications analysis
+        if (!features.getCertifications().isEmpty()) {
+            analysis.append("\nCertifications:\n");
+            features.getCertifications().forEach(cert -> analysis.append("- ").append(cert).append("\n"));
+        }
+        
+        return analysis.toString();
+    }
+    
+    // Helper methods
+    // Window around a hit with whitespace runs collapsed to single spaces
+    private static String extractContext(CharSequence text, int position, int windowSize) {
+        int start = Math.max(0, position - windowSize);
+        int end = Math.min(text.length(), position + windowSize);
+        StringBuilder context = new StringBuilder(end - start);
+        boolean inSpace = false;
+        boolean utf8 = text instanceof Utf8Text;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (utf8 && c == Utf8Text.CONTINUATION) {
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r') {
+                inSpace = true;
+            } else {
+                if (inSpace && context.length() > 0) {
+                    context.append(' ');
+                }
+                inSpace = false;
+                context.append(c);
+            }
+        }
+        return context.toString().trim();
+    }
+    
+    // Same semantics as SkillAutomaton: quoted skills, longest alternative first, word edges only
+    private static Pattern buildSkillPattern() {
+        String alternatives = Arrays.stream(SKILL_AUTOMATON.skillNames)
+            .sorted(Comparator.comparingInt(String::length).reversed())
+            .map(skill -> (SkillAutomaton.isWordChar(skill.charAt(0)) ? "(?<![\\p{L}\\p{Nd}_])" : "")
+                + Pattern.quote(skill)
+                + (SkillAutomaton.isWordChar(skill.charAt(skill.length() - 1)) ? "(?![\\p{L}\\p{Nd}_])" : ""))
+            .collect(Collectors.joining("|"));
+        return Pattern.compile("(" + alternatives + ")", Pattern.CASE_INSENSITIVE);
+    }
+    
+    // Only compiled when the regex extractor is selected
+    private static class LegacyPatterns {
+        static final Pattern SKILL_PATTERN = buildSkillPattern();
+        static final Pattern EXPERIENCE_PATTERN = Pattern.compile(
+            "(\\d+)\\s*\\+?\\s*years?\\s*(?:of\\s*)?experience", 
+            Pattern.CASE_INSENSITIVE
+        );
+        static final Pattern EDUCATION_PATTERN = buildEducationPattern();
+        static final Pattern CERTIFICATION_PATTERN = buildCertificationPattern();
+        static final Pattern PROJECT_PATTERN = Pattern.compile(
+            "project\\s*:\\s*(.+?)(?=\\n|$)", Pattern.CASE_INSENSITIVE
+        );
+    }
+    
+    private static Pattern buildEducationPattern() {
+        String degrees = String.join("|", DEGREE_TYPES);
+        String fields = String.join("|", FIELDS_OF_STUDY);
+        return Pattern.compile(
+            "(" + degrees + ")[\\s\\w]*?(in|of)?[\\s\\w]*?\\b(" + fields + ")\\b",
+            Pattern.CASE_INSENSITIVE
+        );
+    }
+    
+    private static Pattern buildCertificationPattern() {
+        String certs = String.join("|", TECH_CERTIFICATIONS);
+        return Pattern.compile("\\b(" + certs + ")[\\w\\s]*?\\b", Pattern.CASE_INSENSITIVE);
+    }
+    
+    // A current compiled artifact if there is one; otherwise the skill files, which must exist
+    private static FeatureExtractor loadFeatureExtractor() {
+        Path artifact = Paths.get(System.getProperty("shortlister.kb", DEFAULT_KB_ARTIFACT));
+        if (Files.exists(artifact)) {
+            try {
+                FeatureExtractor extractor = CompiledKnowledgeBase.loadIfCurrent(artifact);
+                if (extractor != null) {
+                    return extractor;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Warning: ignoring knowledge base " + artifact + ": " + e.getMessage());
+            }
+        }
+        try {
+            return new FeatureExtractor(readSkills(TECHNICAL_SKILLS_FILE), readSkills(SOFT_SKILLS_FILE),
+                DEGREE_TYPES, FIELDS_OF_STUDY, TECH_CERTIFICATIONS);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read skill file " + e.getMessage()
+                + ": run from the directory holding " + TECHNICAL_SKILLS_FILE + " and " + SOFT_SKILLS_FILE
+                + ", or point -Dshortlister.kb at a compiled knowledge base", e);
+        }
+    }
+    
+    private static void compileKnowledgeBase(Map<String, String> options) {
+        Path artifact = Paths.get(options.get("compile-kb").equals("true") ? DEFAULT_KB_ARTIFACT : options.get("compile-kb"));
+        try {
+            long start = System.nanoTime();
+            FeatureExtractor extractor = new FeatureExtractor(readSkills(TECHNICAL_SKILLS_FILE), readSkills(SOFT_SKILLS_FILE),
+                DEGREE_TYPES, FIELDS_OF_STUDY, TECH_CERTIFICATIONS);
+            CompiledKnowledgeBase.write(artifact, extractor,
+                List.of(TECHNICAL_SKILLS_FILE.toAbsolutePath(), SOFT_SKILLS_FILE.toAbsolutePath()));
+            System.out.printf("Compiled %d skills (knowledge base %s) into %s in %d ms%n",
+                extractor.getAutomaton().getSkillCount(), extractor.getVersion(), artifact,
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Error compiling knowledge base: " + e.getMessage());
+        }
+    }
+    
+    private static Set<String> readSkills(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            return lines.map(String::trim)
+                        .filter(line -> !line.isEmpty())
+                        .collect(Collectors.toSet());
+        }
+    }
+    
+    private static void parseArguments(String[] args, Map<String, String> options, List<String> positional) {
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    options.put(arg.substring(2), "true");
+                } else {
+                    options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+    }
+    
+    // Skill matching
+    public interface SkillHitHandler {
+        void onHit(int skillId, int start, int end);
+    }
+    
+    // Case-folded Aho-Corasick automaton; reports leftmost-longest, non-overlapping skill hits
+    // that do not start or end inside a word, in a single pass over the text.
+    // Marker patterns (ids after the skills) are matched too but left to the caller to interpret.
+    public static class SkillAutomaton {
+        private static final int MAX_PATTERN_LENGTH = 0xFFF;
+        private static final int MAX_PATTERNS = 0xFFFFF;
+        
+        private final String[] skillNames;       // canonical name per skill id
+        private final int skillCount;
+        private final Map<String, Integer> skillIds;  // folded name -> skill id
+        private final int[] patternLengths;      // per pattern id (skills, then markers)
+        private final boolean[] wordStart;
+        private final boolean[] wordEnd;
+        private final int[] asciiSymbols;
+        private final char[] extendedChars;      // sorted non-ASCII chars that occur in patterns
+        private final int alphabetSize;
+        private final int[] transitions;         // state * alphabetSize + symbol -> state
+        private final int[] outputOffsets;       // per state, range into outputs
+        private final int[] outputs;             // pattern ids ending at each state
+        
+        private SkillAutomaton(String[] skillNames, List<String> markers) {
+            String[] patterns = new String[skillNames.length + markers.size()];
+            System.arraycopy(skillNames, 0, patterns, 0, skillNames.length);
+            for (int m = 0; m < markers.size(); m++) {
+                patterns[skillNames.length + m] = markers.get(m);
+            }
+            int patternCount = patterns.length;
+            if (patternCount > MAX_PATTERNS) {
+                throw new IllegalArgumentException("Too many skills: " + patternCount);
+            }
+            this.skillNames = skillNames;
+            this.skillCount = skillNames.length;
+            this.skillIds = new HashMap<>();
+            this.patternLengths = new int[patternCount];
+            this.wordStart = new boolean[patternCount];
+            this.wordEnd = new boolean[patternCount];
+            
+            // Alphabet: one symbol per distinct folded char, symbol 0 for everything else
+            String[] folded = new String[patternCount];
+            TreeSet<Character> extended = new TreeSet<>();
+            this.asciiSymbols = new int[128];
+            int symbols = 1;
+            for (int id = 0; id < patternCount; id++) {
+                folded[id] = fold(patterns[id]);
+                if (folded[id].isEmpty() || utf8Length(folded[id]) > MAX_PATTERN_LENGTH) {
+                    throw new IllegalArgumentException("Invalid pattern length: " + patterns[id]);
+                }
+                if (id < skillCount) {
+                    skillIds.put(folded[id], id);
+                }
+                patternLengths[id] = folded[id].length();
+                wordStart[id] = isWordChar(folded[id].charAt(0));
+                wordEnd[id] = isWordChar(folded[id].charAt(folded[id].length() - 1));
+                for (char c : folded[id].toCharArray()) {
+                    if (c >= 128) {
+                        extended.add(c);
+                    } else if (asciiSymbols[c] == 0) {
+                        asciiSymbols[c] = symbols++;
+                    }
+                }
+            }
+            for (char c = 'A'; c <= 'Z'; c++) {
+                asciiSymbols[c] = asciiSymbols[c + ('a' - 'A')];
+            }
+            this.extendedChars = new char[extended.size()];
+            int e = 0;
+            for (char c : extended) {
+                extendedChars[e++] = c;
+            }
+            this.alphabetSize = symbols + extendedChars.length;
+            
+            // Trie
+            int[] gotoTable = new int[alphabetSize * 64];
+            Arrays.fill(gotoTable, -1);
+            List<List<Integer>> stateOutputs = new ArrayList<>();
+            stateOutputs.add(new ArrayList<>());
+            int states = 1;
+            for (int id = 0; id < patternCount; id++) {
+                int state = 0;
+                for (int i = 0; i < folded[id].length(); i++) {
+                    int index = state * alphabetSize + symbolOf(folded[id].charAt(i));
+                    if (gotoTable[index] < 0) {
+                        if ((states + 1) * alphabetSize > gotoTable.length) {
+                            int oldLength = gotoTable.length;
+                            gotoTable = Arrays.copyOf(gotoTable, oldLength * 2);
+                            Arrays.fill(gotoTable, oldLength, gotoTable.length, -1);
+                        }
+                        gotoTable[index] = states++;
+                        stateOutputs.add(new ArrayList<>());
+                    }
+                    state = gotoTable[index];
+                }
+                stateOutputs.get(state).add(id);
+            }
+            
+            // Failure links resolved into a full DFA, breadth first
+            this.transitions = Arrays.copyOf(gotoTable, states * alphabetSize);
+            int[] failure = new int[states];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int next = transitions[symbol];
+                if (next < 0) {
+                    transitions[symbol] = 0;
+                } else {
+                    failure[next] = 0;
+                    queue.add(next);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                stateOutputs.get(state).addAll(stateOutputs.get(failure[state]));
+                for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                    int index = state * alphabetSize + symbol;
+                    int next = transitions[index];
+                    if (next < 0) {
+                        transitions[index] = transitions[failure[state] * alphabetSize + symbol];
+                    } else {
+                        failure[next] = transitions[failure[state] * alphabetSize + symbol];
+                        queue.add(next);
+                    }
+                }
+            }
+            
+            this.outputOffsets = new int[states + 1];
+            for (int s = 0; s < states; s++) {
+                outputOffsets[s + 1] = outputOffsets[s] + stateOutputs.get(s).size();
+            }
+            this.outputs = new int[outputOffsets[states]];
+            for (int s = 0; s < states; s++) {
+                int o = outputOffsets[s];
+                for (int id : stateOutputs.get(s)) {
+                    outputs[o++] = id;
+                }
+            }
+        }
+        
+        // From the tables of a compiled knowledge base; only the name lookup is rebuilt
+        private SkillAutomaton(String[] skillNames, int[] patternLengths, boolean[] wordStart, boolean[] wordEnd,
+                               int[] asciiSymbols, char[] extendedChars, int alphabetSize, int[] transitions,
+                               int[] outputOffsets, int[] outputs) {
+            this.skillNames = skillNames;
+            this.skillCount = skillNames.length;
+            this.skillIds = new HashMap<>();
+            for (int id = 0; id < skillCount; id++) {
+                skillIds.put(fold(skillNames[id]), id);
+            }
+            this.patternLengths = patternLengths;
+            this.wordStart = wordStart;
+            this.wordEnd = wordEnd;
+            this.asciiSymbols = asciiSymbols;
+            this.extendedChars = extendedChars;
+            this.alphabetSize = alphabetSize;
+            this.transitions = transitions;
+            this.outputOffsets = outputOffsets;
+            this.outputs = outputs;
+        }
+        
+        // Canonical names are sorted; case variants of the same skill collapse onto the first one
+        public static SkillAutomaton build(Collection<String> skills, List<String> markers) {
+            Map<String, String> canonical = new LinkedHashMap<>();
+            for (String skill : new TreeSet<>(skills)) {
+                canonical.putIfAbsent(fold(skill), skill);
+            }
+            return new SkillAutomaton(canonical.values().toArray(new String[0]), markers);
+        }
+        
+        public void findAll(CharSequence text, SkillHitHandler handler) {
+            SkillHits hits = new SkillHits();
+            Utf8Text utf8 = text instanceof Utf8Text ? (Utf8Text) text : null;
+            int state = 0;
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (utf8 != null && c == Utf8Text.CONTINUATION) {
+                    continue;
+                }
+                state = step(state, c);
+                for (int o = outputOffsets[state]; o < outputOffsets[state + 1]; o++) {
+                    int id = outputs[o];
+                    if (id < skillCount) {
+                        int end = utf8 == null ? i + 1 : utf8.charEnd(i);
+                        int start = utf8 == null ? end - patternLengths[id] : utf8.charsBack(end, patternLengths[id]);
+                        hits.offer(text, start, end, id);
+                    }
+                }
+            }
+            hits.resolve(handler);
+        }
+        
+        int step(int state, char c) {
+            return transitions[state * alphabetSize + symbolOf(c)];
+        }
+        
+        int outputsStart(int state) { return outputOffsets[state]; }
+        int outputsEnd(int state) { return outputOffsets[state + 1]; }
+        int outputAt(int index) { return outputs[index]; }
+        int patternLength(int patternId) { return patternLengths[patternId]; }
+        
+        public int getSkillCount() { return skillCount; }
+        public String getSkillName(int skillId) { return skillNames[skillId]; }
+        
+        public int getSkillId(String skill) {
+            Integer id = skillIds.get(fold(skill));
+            return id == null ? -1 : id;
+        }
+        
+        public String canonicalName(String skill) {
+            int id = getSkillId(skill);
+            return id < 0 ? skill : skillNames[id];
+        }
+        
+        private int symbolOf(char c) {
+            if (c < 128) {
+                return asciiSymbols[c];
+            }
+            if (extendedChars.length == 0) {
+                return 0;
+            }
+            int index = Arrays.binarySearch(extendedChars, c);
+            return index < 0 ? 0 : alphabetSize - extendedChars.length + index;
+        }
+        
+        // Collects candidate hits in end order and resolves them leftmost-longest
+        class SkillHits {
+            // Candidate key: start (32 bits) | inverted span (12 bits) | skill id (20 bits)
+            private long[] candidates = new long[16];
+            private int count;
+            
+            // The span is in chars of a String or bytes of a Utf8Text; either way it is at most
+            // MAX_PATTERN_LENGTH, as patterns are bounded by their UTF-8 length
+            void offer(CharSequence text, int start, int end, int skillId) {
+                if ((wordStart[skillId] && start > 0 && isWordChar(Utf8Text.charBefore(text, start)))
+                        || (wordEnd[skillId] && end < text.length() && isWordChar(text.charAt(end)))) {
+                    return;
+                }
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, count * 2);
+                }
+                candidates[count++] = ((long) start << 32)
+                    | ((long) (MAX_PATTERN_LENGTH - (end - start)) << 20) | skillId;
+            }
+            
+            void addAll(SkillHits other) {
+                if (count + other.count > candidates.length) {
+                    candidates = Arrays.copyOf(candidates, Math.max(count + other.count, candidates.length * 2));
+                }
+                System.arraycopy(other.candidates, 0, candidates, count, other.count);
+                count += other.count;
+            }
+            
+            void resolve(SkillHitHandler handler) {
+                Arrays.sort(candidates, 0, count);
+                int lastEnd = 0;
+                for (int c = 0; c < count; c++) {
+                    int start = (int) (candidates[c] >>> 32);
+                    int id = (int) (candidates[c] & MAX_PATTERNS);
+                    if (start >= lastEnd) {
+                        lastEnd = start + MAX_PATTERN_LENGTH - (int) ((candidates[c] >>> 20) & MAX_PATTERN_LENGTH);
+                        handler.onHit(id, start, lastEnd);
+                    }
+                }
+            }
+        }
+        
+        // Bytes a match of s can span in UTF-8 text, rounded up for surrogates
+        private static int utf8Length(String s) {
+            int length = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+            return length;
+        }
+        
+        // ASCII-only case folding, as Pattern.CASE_INSENSITIVE does
+        static String fold(String s) {
+            char[] chars = s.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = foldChar(chars[i]);
+            }
+            return new String(chars);
+        }
+        
+        static char foldChar(char c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        
+        // Word characters as seen by \\b
+        static boolean isWordChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+    }
+    
+    // Reads a resume once and emits skill, experience, degree, certification and project
+    // events. Mirrors the legacy regexes without backtracking: markers come from the automaton,
+    // the rest is tracked by small per-character state machines.
+    public static class FeatureExtractor {
+        private static final String EXPERIENCE_YEAR = "year";
+        private static final String EXPERIENCE_OF = "of";
+        private static final String EXPERIENCE_WORD = "experience";
+        
+        // Experience states: (\\d+)\\s*\\+?\\s*years?\\s*(?:of\\s*)?experience
+        private static final int EXP_IDLE = 0;
+        private static final int EXP_DIGITS = 1;
+        private static final int EXP_BEFORE_PLUS = 2;
+        private static final int EXP_AFTER_PLUS = 3;
+        private static final int EXP_YEAR = 4;
+        private static final int EXP_AFTER_YEAR = 5;
+        private static final int EXP_BEFORE_OF = 6;
+        private static final int EXP_OF = 7;
+        private static final int EXP_AFTER_OF = 8;
+        private static final int EXP_WORD = 9;
+        
+        // Project states: project\\s*:\\s*(.+?) up to the end of the line
+        private static final int PROJECT_IDLE = 0;
+        private static final int PROJECT_BEFORE_COLON = 1;
+        private static final int PROJECT_AFTER_COLON = 2;
+        private static final int PROJECT_CAPTURE = 3;
+        
+        // Intra-document parallelism: chunk length in characters (-Dshortlister.chunk), and how far
+        // before its start each chunk begins scanning
+        static final int CHUNK_SIZE = Math.max(1, Integer.getInteger("shortlister.chunk", 1 << 18));
+        private static final int CHUNK_OVERLAP = SkillAutomaton.MAX_PATTERN_LENGTH + 1;
+        
+        private final SkillAutomaton automaton;
+        private final int degreeStart;
+        private final int fieldStart;
+        private final int certificationStart;
+        private final int projectMarker;
+        private final String version;
+        
+        public FeatureExtractor(Set<String> technicalSkills, Set<String> softSkills, Set<String> degreeTypes,
+                                List<String> fieldsOfStudy, Set<String> certifications) {
+            Set<String> skills = new HashSet<>(technicalSkills);
+            skills.addAll(softSkills);
+            List<String> markers = markers(degreeTypes, fieldsOfStudy, certifications);
+            this.automaton = SkillAutomaton.build(skills, markers);
+            this.degreeStart = automaton.getSkillCount();
+            this.fieldStart = degreeStart + degreeTypes.size();
+            this.certificationStart = fieldStart + fieldsOfStudy.size();
+            this.projectMarker = certificationStart + certifications.size();
+            this.version = fingerprint(automaton.skillNames, markers);
+        }
+        
+        // Marker patterns in id order, after the skills
+        static List<String> markers(Set<String> degreeTypes, List<String> fieldsOfStudy, Set<String> certifications) {
+            List<String> markers = new ArrayList<>();
+            markers.addAll(new TreeSet<>(degreeTypes));
+            markers.addAll(fieldsOfStudy);
+            markers.addAll(new TreeSet<>(certifications));
+            markers.add("project");
+            return markers;
+        }
+        
+        // Changes whenever the skill id table, the markers or the extraction rules change
+        static String fingerprint(String[] skillNames, List<String> markers) {
+            StringBuilder fingerprint = new StringBuilder("extractor-v2\n");
+            for (String skill : skillNames) {
+                fingerprint.append(skill).append('\n');
+            }
+            markers.forEach(marker -> fingerprint.append(marker).append('\n'));
+            return FeatureCache.toHex(FeatureCache.sha256(fingerprint.toString())).substring(0, 16);
+        }
+        
+        private FeatureExtractor(SkillAutomaton automaton, int degreeStart, int fieldStart, int certificationStart,
+                                 int projectMarker, String version) {
+            this.automaton = automaton;
+            this.degreeStart = degreeStart;
+            this.fieldStart = fieldStart;
+            this.certificationStart = certificationStart;
+            this.projectMarker = projectMarker;
+            this.version = version;
+        }
+        
+        public SkillAutomaton getAutomaton() { return automaton; }
+        public String getVersion() { return version; }
+        
+        // Chunking only pays off with cores to spare
+        public ResumeFeatures extract(CharSequence content) {
+            return extract(content, MAX_THREADS > 1 ? CHUNK_SIZE : Integer.MAX_VALUE);
+        }
+        
+        // Documents of at least two chunks are split; see scanChunks
+        public ResumeFeatures extract(CharSequence content, int chunkSize) {
+            ResumeFeatures.Builder features = new ResumeFeatures.Builder();
+            SkillAutomaton.SkillHits skillHits = automaton.new SkillHits();
+            Scan scan;
+            if (content.length() / chunkSize < 2) {
+                scan = new Scan(features, skillHits);
+                scan.run(content, 0, content.length());
+            } else {
+                scan = scanChunks(content, chunkSize, features, skillHits);
+            }
+            scan.finish(content, features);
+            skillHits.resolve((skillId, start, end) ->
+                features.addSkillHit(skillId, start));
+            return features.build();
+        }
+        
+        // Chunks end at a line break where there is one close by and are scanned in parallel on the
+        // fork-join pool, each starting cold CHUNK_OVERLAP characters early. The automaton state only
+        // depends on the last MAX_PATTERN_LENGTH characters, so it has caught up by the chunk start, and
+        // the other state machines nearly always have. Chunks are merged in order; one whose state at
+        // its start differs from where the previous chunk really ended is scanned again from that
+        // state, so the features are always those of a single pass.
+        private Scan scanChunks(CharSequence content, int chunkSize, ResumeFeatures.Builder features,
+                                SkillAutomaton.SkillHits skillHits) {
+            int length = content.length();
+            int count = length / chunkSize;
+            List<ChunkScan> chunks = new ArrayList<>(count);
+            int from = 0;
+            for (int k = 1; k <= count; k++) {
+                int to = k == count ? length : Math.max(from, nextLine(content, k * chunkSize));
+                chunks.add(new ChunkScan(content, from, to));
+                from = to;
+            }
+            ForkJoinTask.invokeAll(chunks.stream().map(ForkJoinTask::adapt).collect(Collectors.toList()));
+            
+            Scan tail = null;
+            for (ChunkScan chunk : chunks) {
+                Scan scan = chunk.scan;
+                if (tail != null && !chunk.entry.resumes(tail, chunk.from)) {
+                    scan = new Scan(tail, new ResumeFeatures.Builder(), automaton.new SkillHits());
+                    scan.run(content, chunk.from, chunk.to);
+                }
+                features.addAll(scan.features);
+                skillHits.addAll(scan.skillHits);
+                if (tail != null && tail.experienceFound) {
+                    scan.experienceFound = true;
+                    scan.years = tail.years;
+                }
+                tail = scan;
+            }
+            return tail;
+        }
+        
+        private static int nextLine(CharSequence content, int position) {
+            int limit = Math.min(content.length(), position + CHUNK_OVERLAP);
+            for (int i = position; i < limit; i++) {
+                if (content.charAt(i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return position;
+        }
+        
+        private final class ChunkScan implements Runnable {
+            private final CharSequence content;
+            private final int from;
+            private final int to;
+            private Scan entry;   // cold state after the overlap
+            private Scan scan;
+            
+            ChunkScan(CharSequence content, int from, int to) {
+                this.content = content;
+                this.from = from;
+                this.to = to;
+            }
+            
+            @Override
+            public void run() {
+                entry = new Scan(new ResumeFeatures.Builder(), automaton.new SkillHits());
+                entry.run(content, Math.max(0, from - CHUNK_OVERLAP), from);
+                scan = new Scan(entry, new ResumeFeatures.Builder(), automaton.new SkillHits());
+                scan.run(content, from, to);
+            }
+        }
+        
+        // Extraction state at one position of a document, advanced over a range by run()
+        private final class Scan {
+            private final ResumeFeatures.Builder features;
+            private final SkillAutomaton.SkillHits skillHits;
+            private int state;
+            private int expState = EXP_IDLE;
+            private int expProgress;
+            private int expDigitsStart;
+            private int expDigitsEnd;
+            private boolean experienceFound;
+            private int years;
+            private int degreeFrom = -1;         // start of the pending degree, -1 if none
+            private int degreeEnd;
+            private int educationResume;         // education matches do not overlap
+            private int certificationFrom = -1;  // start of a certification being extended to a word boundary
+            private int certificationResume;
+            private int projectState = PROJECT_IDLE;
+            private int projectFrom;
+            
+            Scan(ResumeFeatures.Builder features, SkillAutomaton.SkillHits skillHits) {
+                this.features = features;
+                this.skillHits = skillHits;
+            }
+            
+            // Continues where another scan stopped, with its own output
+            Scan(Scan previous, ResumeFeatures.Builder features, SkillAutomaton.SkillHits skillHits) {
+                this(features, skillHits);
+                state = previous.state;
+                expState = previous.expState;
+                expProgress = previous.expProgress;
+                expDigitsStart = previous.expDigitsStart;
+                expDigitsEnd = previous.expDigitsEnd;
+                experienceFound = previous.experienceFound;
+                years = previous.years;
+                degreeFrom = previous.degreeFrom;
+                degreeEnd = previous.degreeEnd;
+                educationResume = previous.educationResume;
+                certificationFrom = previous.certificationFrom;
+                certificationResume = previous.certificationResume;
+                projectState = previous.projectState;
+                projectFrom = previous.projectFrom;
+            }
+            
+            void run(CharSequence content, int from, int to) {
+                // Locals keep the loop's state in registers
+                int state = this.state;
+                int expState = this.expState;
+                int expProgress = this.expProgress;
+                int expDigitsStart = this.expDigitsStart;
+                int expDigitsEnd = this.expDigitsEnd;
+                boolean experienceFound = this.experienceFound;
+                int years = this.years;
+                int degreeFrom = this.degreeFrom;
+                int degreeEnd = this.degreeEnd;
+                int educationResume = this.educationResume;
+                int certificationFrom = this.certificationFrom;
+                int certificationResume = this.certificationResume;
+                int projectState = this.projectState;
+                int projectFrom = this.projectFrom;
+                Utf8Text utf8 = content instanceof Utf8Text ? (Utf8Text) content : null;
+                
+                for (int i = from; i < to; i++) {
+                    char c = content.charAt(i);
+                    if (utf8 != null && c == Utf8Text.CONTINUATION) {
+                        continue;
+                    }
+                
+                    // Experience: first match only
+                    if (!experienceFound) {
+                        char f = SkillAutomaton.foldChar(c);
+                        boolean space = isRegexSpace(c);
+                        switch (expState) {
+                            case EXP_DIGITS:
+                                if (isDigit(c)) {
+                                    break;
+                                }
+                                expDigitsEnd = i;
+                                expState = space ? EXP_BEFORE_PLUS : c == '+' ? EXP_AFTER_PLUS : f == 'y' ? EXP_YEAR : EXP_IDLE;
+                                expProgress = 1;
+                                break;
+                            case EXP_BEFORE_PLUS:
+                                expState = space ? EXP_BEFORE_PLUS : c == '+' ? EXP_AFTER_PLUS : f == 'y' ? EXP_YEAR : EXP_IDLE;
+                                expProgress = 1;
+                                break;
+                            case EXP_AFTER_PLUS:
+                                expState = space ? EXP_AFTER_PLUS : f == 'y' ? EXP_YEAR : EXP_IDLE;
+                                expProgress = 1;
+                                break;
+                            case EXP_YEAR:
+                                if (f == EXPERIENCE_YEAR.charAt(expProgress)) {
+                                    if (++expProgress == EXPERIENCE_YEAR.length()) {
+                                        expState = EXP_AFTER_YEAR;
+                                    }
+                                } else {
+                                    expState = EXP_IDLE;
+                                }
+                                break;
+                            case EXP_AFTER_YEAR:
+                            case EXP_BEFORE_OF:
+                                if (f == 's' && expState == EXP_AFTER_YEAR) {
+                                    expState = EXP_BEFORE_OF;
+                                } else if (space) {
+                                    expState = EXP_BEFORE_OF;
+                                } else if (f == 'o') {
+                                    expState = EXP_OF;
+                                    expProgress = 1;
+                                } else if (f == 'e') {
+                                    expState = EXP_WORD;
+                                    expProgress = 1;
+                                } else {
+                                    expState = EXP_IDLE;
+                                }
+                                break;
+                            case EXP_OF:
+                                if (f == EXPERIENCE_OF.charAt(expProgress)) {
+                                    expState = EXP_AFTER_OF;
+                                } else {
+                                    expState = EXP_IDLE;
+                                }
+                                break;
+                            case EXP_AFTER_OF:
+                                expState = space ? EXP_AFTER_OF : f == 'e' ? EXP_WORD : EXP_IDLE;
+                                expProgress = 1;
+                                break;
+                            case EXP_WORD:
+                                if (f == EXPERIENCE_WORD.charAt(expProgress)) {
+                                    if (++expProgress == EXPERIENCE_WORD.length()) {
+                                        years = parseYears(content, expDigitsStart, expDigitsEnd);
+                                        experienceFound = true;
+                                    }
+                                } else {
+                                    expState = EXP_IDLE;
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                        if (expState == EXP_IDLE && isDigit(c)) {
+                            expState = EXP_DIGITS;
+                            expDigitsStart = i;
+                        }
+                    }
+                
+                    // Education: the text between a degree and its field must stay inside [\\s\\w]
+                    if (degreeFrom >= 0 && !isRegexSpace(c) && !isRegexWord(c)) {
+                        degreeFrom = -1;
+                    }
+                
+                    // Certification: lazily extended up to the next word boundary
+                    if (certificationFrom >= 0) {
+                        if (isBoundary(content, i)) {
+                            features.addCertification(content.subSequence(certificationFrom, i).toString());
+                            certificationResume = i;
+                            certificationFrom = -1;
+                        } else if (!isRegexSpace(c) && !isRegexWord(c)) {
+                            certificationFrom = -1;
+                        }
+                    }
+                
+                    // Project: rest of the line after "project:"
+                    switch (projectState) {
+                        case PROJECT_BEFORE_COLON:
+                            projectState = isRegexSpace(c) ? PROJECT_BEFORE_COLON : c == ':' ? PROJECT_AFTER_COLON : PROJECT_IDLE;
+                            break;
+                        case PROJECT_AFTER_COLON:
+                            if (isLineTerminator(c)) {
+                                projectState = isRegexSpace(c) ? PROJECT_AFTER_COLON : PROJECT_IDLE;
+                            } else if (!isRegexSpace(c)) {
+                                projectState = PROJECT_CAPTURE;
+                                projectFrom = i;
+                            }
+                            break;
+                        case PROJECT_CAPTURE:
+                            if (isLineTerminator(c)) {
+                                features.addProject(content.subSequence(projectFrom, i).toString());
+                                projectState = PROJECT_IDLE;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                
+                    state = automaton.step(state, c);
+                    for (int o = automaton.outputsStart(state); o < automaton.outputsEnd(state); o++) {
+                        int id = automaton.outputAt(o);
+                        int length = automaton.patternLength(id);
+                        int end = utf8 == null ? i + 1 : utf8.charEnd(i);
+                        int start = utf8 == null ? end - length : utf8.charsBack(end, length);
+                        if (id < degreeStart) {
+                            skillHits.offer(content, start, end, id);
+                        } else if (id < fieldStart) {
+                            if (degreeFrom < 0 && start >= educationResume) {
+                                degreeFrom = start;
+                                degreeEnd = end;
+                            }
+                        } else if (id < certificationStart) {
+                            if (degreeFrom >= 0 && start >= degreeEnd && isBoundary(content, start) && isBoundary(content, end)) {
+                                features.addEducation(content.subSequence(degreeFrom, end).toString());
+                                educationResume = end;
+                                degreeFrom = -1;
+                            }
+                        } else if (id < projectMarker) {
+                            if (certificationFrom < 0 && start >= certificationResume && isBoundary(content, start)) {
+                                if (isBoundary(content, end)) {
+                                    features.addCertification(content.subSequence(start, end).toString());
+                                    certificationResume = end;
+                                } else {
+                                    certificationFrom = start;
+                                }
+                            }
+                        } else if (projectState == PROJECT_IDLE) {
+                            projectState = PROJECT_BEFORE_COLON;
+                        }
+                    }
+                }
+                
+                this.state = state;
+                this.expState = expState;
+                this.expProgress = expProgress;
+                this.expDigitsStart = expDigitsStart;
+                this.expDigitsEnd = expDigitsEnd;
+                this.experienceFound = experienceFound;
+                this.years = years;
+                this.degreeFrom = degreeFrom;
+                this.degreeEnd = degreeEnd;
+                this.educationResume = educationResume;
+                this.certificationFrom = certificationFrom;
+                this.certificationResume = certificationResume;
+                this.projectState = projectState;
+                this.projectFrom = projectFrom;
+            }
+            
+            // Matches still open at the end of the document
+            void finish(CharSequence content, ResumeFeatures.Builder into) {
+                int length = content.length();
+                if (certificationFrom >= 0 && isBoundary(content, length)) {
+                    into.addCertification(content.subSequence(certificationFrom, length).toString());
+                }
+                if (projectState == PROJECT_CAPTURE) {
+                    into.addProject(content.subSequence(projectFrom, length).toString());
+                }
+                into.setYearsExperience(years);
+            }
+            
+            // Whether continuing from this state at position gives the same features as continuing
+            // from exact. Matches ending after position start at floor or later (patterns span at
+            // most MAX_PATTERN_LENGTH bytes of UTF-8 too), so resume points before floor are all
+            // equivalent.
+            boolean resumes(Scan exact, int position) {
+                int floor = position + 1 - SkillAutomaton.MAX_PATTERN_LENGTH;
+                return state == exact.state
+                    && (exact.experienceFound || (!experienceFound && expState == exact.expState
+                        && (expState == EXP_IDLE || (expDigitsStart == exact.expDigitsStart
+                            && (expState == EXP_DIGITS
+                                || (expDigitsEnd == exact.expDigitsEnd && expProgress == exact.expProgress))))))
+                    && degreeFrom == exact.degreeFrom && (degreeFrom < 0 || degreeEnd == exact.degreeEnd)
+                    && Math.max(educationResume, floor) == Math.max(exact.educationResume, floor)
+                    && certificationFrom == exact.certificationFrom
+                    && Math.max(certificationResume, floor) == Math.max(exact.certificationResume, floor)
+                    && projectState == exact.projectState
+                    && (projectState != PROJECT_CAPTURE || projectFrom == exact.projectFrom);
+            }
+        }
+        
+        private static int parseYears(CharSequence content, int start, int end) {
+            long years = 0;
+            for (int i = start; i < end && years <= Integer.MAX_VALUE; i++) {
+                years = years * 10 + (content.charAt(i) - '0');
+            }
+            return (int) Math.min(years, Integer.MAX_VALUE);
+        }
+        
+        // \\b at position, with \\b's definition of a word character
+        private static boolean isBoundary(CharSequence text, int position) {
+            boolean before = position > 0 && SkillAutomaton.isWordChar(Utf8Text.charBefore(text, position));
+            boolean after = position < text.length() && SkillAutomaton.isWordChar(text.charAt(position));
+            return before != after;
+        }
+        
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+        
+        // \\w and \\s without UNICODE_CHARACTER_CLASS
+        private static boolean isRegexWord(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+        }
+        
+        private static boolean isRegexSpace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+        }
+        
+        private static boolean isLineTerminator(char c) {
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+    }
+    
+    // Resume bytes without decoding: small files go into pooled direct buffers, larger ones are
+    // memory-mapped. The pool is shared, so short-lived worker pools do not keep allocating
+    // direct memory that only the GC can free.
+    public static class ByteIngest {
+        private static final int POOLED_BUFFER_SIZE = 1 << 20;
+        private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+        
+        // Hand the buffer back with release() once the bytes are no longer needed
+        public static ByteBuffer read(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Resume too large: " + path);
+                }
+                if (size > POOLED_BUFFER_SIZE) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+                ByteBuffer buffer = POOL.poll();
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocateDirect(POOLED_BUFFER_SIZE);
+                }
+                try {
+                    buffer.clear().limit((int) size);
+                    while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                        // keep reading
+                    }
+                } catch (IOException | RuntimeException e) {
+                    release(buffer);
+                    throw e;
+                }
+                return buffer.flip();
+            }
+        }
+        
+        // Mapped buffers are never pooled; they are unmapped when collected
+        public static void release(ByteBuffer buffer) {
+            if (buffer.isDirect() && buffer.capacity() == POOLED_BUFFER_SIZE) {
+                POOL.offer(buffer);
+            }
+        }
+    }
+    
+    // UTF-8 bytes as a CharSequence indexed by byte offset. ASCII reads straight through. A
+    // multi-byte character reads as itself at its lead byte (a supplementary one as a surrogate
+    // pair over its first two bytes), and its remaining bytes read as CONTINUATION, which scanners
+    // skip; so every character is seen once, next to its real neighbours. Invalid bytes read as
+    // U+FFFD. Only subSequence/toString decode into Strings.
+    public static class Utf8Text implements CharSequence {
+        // A noncharacter, so neither a word char nor a space; U+FFFF in the input reads as U+FFFD
+        public static final char CONTINUATION = '\uFFFF';
+        private static final char REPLACEMENT = '\uFFFD';
+        
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+        
+        public Utf8Text(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.offset = bytes.position();
+            this.length = bytes.remaining();
+        }
+        
+        @Override
+        public int length() {
+            return length;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            byte b = bytes.get(offset + index);
+            return b >= 0 ? (char) b : decodeAt(index);
+        }
+        
+        private char decodeAt(int index) {
+            int lead = index;
+            while (lead > 0 && index - lead < 3 && (bytes.get(offset + lead) & 0xC0) == 0x80) {
+                lead--;
+            }
+            int first = bytes.get(offset + lead) & 0xFF;
+            int size = first >= 0xF8 ? 0 : first >= 0xF0 ? 4 : first >= 0xE0 ? 3 : first >= 0xC0 ? 2 : 0;
+            if (size == 0 || lead + size <= index || lead + size > length) {
+                return REPLACEMENT;
+            }
+            int codePoint = first & (0x7F >> size);
+            for (int k = 1; k < size; k++) {
+                int next = bytes.get(offset + lead + k) & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    return REPLACEMENT;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            // Overlong forms, surrogates and code points past U+10FFFF are invalid, as for the decoder
+            if (codePoint < (size == 2 ? 0x80 : size == 3 ? 0x800 : 0x10000) || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                return REPLACEMENT;
+            }
+            if (codePoint > 0xFFFF) {
+                return index == lead ? Character.highSurrogate(codePoint)
+                    : index == lead + 1 ? Character.lowSurrogate(codePoint) : CONTINUATION;
+            }
+            return index > lead ? CONTINUATION : codePoint == CONTINUATION ? REPLACEMENT : (char) codePoint;
+        }
+        
+        // Offset just past the character read at index
+        public int charEnd(int index) {
+            int end = index + 1;
+            while (end < length && charAt(end) == CONTINUATION) {
+                end++;
+            }
+            return end;
+        }
+        
+        // Offset of the character count characters before end
+        public int charsBack(int end, int count) {
+            int start = end;
+            while (count > 0) {
+                if (charAt(--start) != CONTINUATION) {
+                    count--;
+                }
+            }
+            return start;
+        }
+        
+        // The character before position, which must be positive
+        static char charBefore(CharSequence text, int position) {
+            int index = position - 1;
+            if (text instanceof Utf8Text) {
+                while (index > 0 && text.charAt(index) == CONTINUATION) {
+                    index--;
+                }
+            }
+            return text.charAt(index);
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] slice = new byte[end - start];
+            for (int i = 0; i < slice.length; i++) {
+                slice[i] = bytes.get(offset + start + i);
+            }
+            return new String(slice, StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+    
+    // Streaming ranking
+    private static final Resume END_OF_INPUT = new Resume("", "");
+    
+    // End markers sort after every resume
+    private static final Comparator<Resume> LARGEST_FIRST =
+        Comparator.comparing((Resume resume) -> resume == END_OF_INPUT)
+                  .thenComparing(Comparator.comparingLong(Resume::getSize).reversed());
+    
+    // Fixed-size min-heap holding the best K resumes seen so far. When near-duplicates are collapsed,
+    // resumes sharing one ResumeFeatures instance are copies, and only the best ranked of them (equal
+    // scores, so the first name) is held: replacing a copy by a better one leaves exactly the top K.
+    public static class TopKCollector {
+        private final int k;
+        private final PriorityQueue<RankedResume> heap;
+        private final Map<ResumeFeatures, RankedResume> copies;
+        
+        public TopKCollector(int k) {
+            this(k, false);
+        }
+        
+        public TopKCollector(int k, boolean collapseCopies) {
+            if (k < 1) {
+                throw new IllegalArgumentException("Top K must be positive: " + k);
+            }
+            this.k = k;
+            this.heap = new PriorityQueue<>(k, RANKING_ORDER.reversed());
+            this.copies = collapseCopies ? new IdentityHashMap<>() : null;
+        }
+        
+        public void offer(RankedResume resume) {
+            if (copies != null) {
+                RankedResume copy = copies.get(resume.getFeatures());
+                if (copy != null) {
+                    if (RANKING_ORDER.compare(resume, copy) < 0) {
+                        heap.remove(copy);
+                        heap.add(resume);
+                        copies.put(resume.getFeatures(), resume);
+                    }
+                    return;
+                }
+            }
+            if (heap.size() < k) {
+                add(resume);
+            } else if (RANKING_ORDER.compare(resume, heap.peek()) < 0) {
+                RankedResume evicted = heap.poll();
+                if (copies != null) {
+                    copies.remove(evicted.getFeatures());
+                }
+                add(resume);
+            }
+        }
+        
+        private void add(RankedResume resume) {
+            heap.add(resume);
+            if (copies != null) {
+                copies.put(resume.getFeatures(), resume);
+            }
+        }
+        
+        public void addAll(TopKCollector other) {
+            other.heap.forEach(this::offer);
+        }
+        
+        public List<RankedResume> toSortedList() {
+            List<RankedResume> sorted = new ArrayList<>(heap);
+            sorted.sort(RANKING_ORDER);
+            return sorted;
+        }
+    }
+    
+    // Full ranking with bounded memory: sorted runs are spilled to temp files and merged on read
+    public static class RankingSpill implements Closeable {
+        private final int batchSize;
+        private final List<RankingEntry> buffer = new ArrayList<>();
+        private final List<Path> runs = new ArrayList<>();
+        private final List<Closeable> openRuns = new ArrayList<>();
+        private Path directory;
+        private int size;
+        
+        public RankingSpill(int batchSize) {
+            this.batchSize = batchSize;
+        }
+        
+        public synchronized void add(RankingEntry entry) throws IOException {
+            size++;
+            buffer.add(entry);
+            if (buffer.size() >= batchSize) {
+                spill();
+            }
+        }
+        
+        // Entries in ranking order; call once all entries were added
+        public synchronized Iterator<RankingEntry> merge() throws IOException {
+            if (runs.isEmpty()) {
+                buffer.sort(RankingEntry.ORDER);
+                return buffer.iterator();
+            }
+            if (!buffer.isEmpty()) {
+                spill();
+            }
+            return mergeRuns(runs, openRuns);
+        }
+        
+        public synchronized int size() {
+            return size;
+        }
+        
+        // K-way merge of sorted run files; the streams opened are added to openRuns for closing
+        public static Iterator<RankingEntry> mergeRuns(List<Path> runs, List<Closeable> openRuns) throws IOException {
+            PriorityQueue<RunCursor> cursors = new PriorityQueue<>(
+                Comparator.comparing((RunCursor cursor) -> cursor.current, RankingEntry.ORDER));
+            for (Path run : runs) {
+                RunCursor cursor = new RunCursor(run);
+                openRuns.add(cursor.in);
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+            return new Iterator<RankingEntry>() {
+                @Override
+                public boolean hasNext() {
+                    return !cursors.isEmpty();
+                }
+                
+                @Override
+                public RankingEntry next() {
+                    RunCursor cursor = cursors.poll();
+                    if (cursor == null) {
+                        throw new NoSuchElementException();
+                    }
+                    RankingEntry entry = cursor.current;
+                    try {
+                        if (cursor.advance()) {
+                            cursors.add(cursor);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return entry;
+                }
+            };
+        }
+        
+        private void spill() throws IOException {
+            if (directory == null) {
+                directory = Files.createTempDirectory("shortlister-ranking");
+            }
+            buffer.sort(RankingEntry.ORDER);
+            Path run = directory.resolve("run-" + runs.size() + ".bin");
+            writeRun(run, buffer.size(), buffer.iterator());
+            runs.add(run);
+            buffer.clear();
+        }
+        
+        // A run is the entry count followed by the entries, already in ranking order
+        public static void writeRun(Path run, int count, Iterator<RankingEntry> entries) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    entries.next().writeTo(out);
+                }
+            }
+        }
+        
+        @Override
+        public synchronized void close() throws IOException {
+            for (Closeable run : openRuns) {
+                run.close();
+            }
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            if (directory != null) {
+                Files.deleteIfExists(directory);
+            }
+        }
+        
+        private static class RunCursor {
+            private final DataInputStream in;
+            private int remaining;
+            private RankingEntry current;
+            
+            RunCursor(Path run) throws IOException {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+                this.remaining = in.readInt();
+            }
+            
+            boolean advance() throws IOException {
+                if (remaining == 0) {
+                    in.close();
+                    return false;
+                }
+                remaining--;
+                current = RankingEntry.readFrom(in);
+                return true;
+            }
+        }
+    }
+    
+    // Ranking of a watched directory, kept sorted as files come and go. Entries are keyed by path,
+    // which also breaks exact ties between same-named files in different folders.
+    public static class LiveRanking {
+        private final Map<Path, LiveEntry> byPath = new HashMap<>();
+        private final TreeSet<LiveEntry> ordered = new TreeSet<>(
+            Comparator.comparing((LiveEntry e) -> e.entry, RankingEntry.ORDER).thenComparing(e -> e.path));
+        
+        public void put(Path path, RankingEntry entry) {
+            LiveEntry previous = byPath.put(path, new LiveEntry(path, entry));
+            if (previous != null) {
+                ordered.remove(previous);
+            }
+            ordered.add(byPath.get(path));
+        }
+        
+        // Removes the file at path, or every file under it if it was a directory
+        public List<RankingEntry> removeTree(Path path) {
+            List<RankingEntry> removed = new ArrayList<>();
+            LiveEntry entry = byPath.remove(path);
+            if (entry != null) {
+                ordered.remove(entry);
+                removed.add(entry.entry);
+                return removed;
+            }
+            for (Iterator<LiveEntry> it = byPath.values().iterator(); it.hasNext(); ) {
+                LiveEntry candidate = it.next();
+                if (candidate.path.startsWith(path)) {
+                    it.remove();
+                    ordered.remove(candidate);
+                    removed.add(candidate.entry);
+                }
+            }
+            return removed;
+        }
+        
+        public List<RankingEntry> top(int k) {
+            List<RankingEntry> top = new ArrayList<>(Math.min(k, ordered.size()));
+            for (Iterator<LiveEntry> it = ordered.iterator(); it.hasNext() && top.size() < k; ) {
+                top.add(it.next().entry);
+            }
+            return top;
+        }
+        
+        public Set<Path> paths() { return new HashSet<>(byPath.keySet()); }
+        public int size() { return byPath.size(); }
+        
+        private static class LiveEntry {
+            private final Path path;
+            private final RankingEntry entry;
+            
+            LiveEntry(Path path, RankingEntry entry) {
+                this.path = path;
+                this.entry = entry;
+            }
+        }
+    }
+    
+    // Content-addressed store of extracted features: <dir>/<kb version>/<hash prefix>/<sha-256>.bin.
+    // Entries are written to a temp file and renamed into place, so concurrent processes never
+    // see partial files; a corrupt or foreign entry is counted as an error, then treated as a miss
+    // and rewritten. Counts, lengths and skill ids are checked against the entry's size, the content
+    // length and the skill count before anything is allocated.
+    public static class FeatureCache {
+        private static final int MAGIC = 0x52534643;   // "RSFC"
+        private static final int FORMAT_VERSION = 1;
+        
+        private final Path directory;
+        private final int skillCount;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        
+        public FeatureCache(Path root, String knowledgeBaseVersion, int skillCount) throws IOException {
+            this.directory = Files.createDirectories(root.resolve(knowledgeBaseVersion));
+            this.skillCount = skillCount;
+        }
+        
+        public ResumeFeatures getOrExtract(String content, Function<String, ResumeFeatures> extractor) {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            return getOrExtract(toHex(sha256(bytes)), bytes.length, () -> extractor.apply(content));
+        }
+        
+        // Same key for the raw UTF-8 bytes; the buffer's position is left unchanged
+        public ResumeFeatures getOrExtract(ByteBuffer bytes, Supplier<ResumeFeatures> extractor) {
+            return getOrExtract(toHex(sha256(bytes)), bytes.remaining(), extractor);
+        }
+        
+        private ResumeFeatures getOrExtract(String key, int contentLength, Supplier<ResumeFeatures> extractor) {
+            Path entry = directory.resolve(key.substring(0, 2)).resolve(key + ".bin");
+            
+            if (Files.exists(entry)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+                    ResumeFeatures features = read(in, contentLength, Files.size(entry));
+                    if (features != null) {
+                        hits.incrementAndGet();
+                        return features;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    errors.incrementAndGet();
+                }
+            }
+            
+            misses.incrementAndGet();
+            ResumeFeatures features = extractor.get();
+            try {
+                Files.createDirectories(entry.getParent());
+                Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+                try {
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                        write(out, features, contentLength);
+                    }
+                    Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+            return features;
+        }
+        
+        public String getStatistics() {
+            long h = hits.get();
+            long m = misses.get();
+            double rate = h + m == 0 ? 0 : 100.0 * h / (h + m);
+            return String.format("Feature cache: %d hits, %d misses (%.1f%% hit rate), %d errors", h, m, rate, errors.get());
+        }
+        
+        private static void write(DataOutputStream out, ResumeFeatures features, int contentLength) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(contentLength);
+            writeVarInt(out, features.getYearsExperience());
+            
+            // Skill ids and offsets are ascending within their groups, so deltas stay small
+            int[] ids = features.getSkillIds();
+            int[] counts = features.getSkillCounts();
+            int[] positions = features.getHitPositions();
+            writeVarInt(out, ids.length);
+            int h = 0;
+            for (int i = 0; i < ids.length; i++) {
+                writeVarInt(out, i == 0 ? ids[i] : ids[i] - ids[i - 1]);
+                writeVarInt(out, counts[i]);
+                for (int c = 0; c < counts[i]; c++, h++) {
+                    writeVarInt(out, c == 0 ? positions[h] : positions[h] - positions[h - 1]);
+                }
+            }
+            writeStrings(out, features.getEducation());
+            writeStrings(out, features.getCertifications());
+            writeStrings(out, features.getProjects());
+        }
+        
+        // Every varint takes at least one byte, so no count or length can exceed the entry size
+        private ResumeFeatures read(DataInputStream in, int contentLength, long size) throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != contentLength) {
+                return null;
+            }
+            int yearsExperience = readBounded(in, Integer.MAX_VALUE);
+            int[] ids = new int[readBounded(in, Math.min(skillCount, size))];
+            int[] counts = new int[ids.length];
+            int[] positions = new int[16];
+            int h = 0;
+            for (int i = 0; i < ids.length; i++) {
+                int previous = i == 0 ? 0 : ids[i - 1];
+                ids[i] = previous + readBounded(in, skillCount - 1 - previous);
+                if (i > 0 && ids[i] == previous) {
+                    throw new IOException("Corrupt cache entry");
+                }
+                counts[i] = readBounded(in, size - h);
+                for (int c = 0; c < counts[i]; c++, h++) {
+                    if (h == positions.length) {
+                        positions = Arrays.copyOf(positions, h * 2);
+                    }
+                    int position = c == 0 ? 0 : positions[h - 1];
+                    positions[h] = position + readBounded(in, contentLength - 1 - position);
+                }
+            }
+            return new ResumeFeatures(ids, counts, Arrays.copyOf(positions, h), yearsExperience,
+                                      readStrings(in, size), readStrings(in, size), readStrings(in, size));
+        }
+        
+        // A count or length in [0, limit]
+        private static int readBounded(DataInput in, long limit) throws IOException {
+            int value = readVarInt(in);
+            if (value < 0 || value > limit) {
+                throw new IOException("Corrupt cache entry");
+            }
+            return value;
+        }
+        
+        private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+            writeVarInt(out, values.size());
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+        
+        private static List<String> readStrings(DataInputStream in, long limit) throws IOException {
+            int size = readBounded(in, limit);
+            List<String> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte[] bytes = new byte[readBounded(in, limit)];
+                in.readFully(bytes);
+                values.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return values;
+        }
+        
+        static void writeVarInt(DataOutput out, int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+        
+        static int readVarInt(DataInput in) throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = in.readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+        
+        static byte[] sha256(String text) {
+            return sha256(text.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        static byte[] sha256(ByteBuffer bytes) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(bytes.duplicate());
+                return digest.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+        
+        static byte[] sha256(byte[] bytes) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(bytes);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+        
+        static String toHex(byte[] bytes) {
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+    }
+    
+    // Near-duplicate detection: MinHash signatures over word 3-shingles, bucketed with LSH so a
+    // resume is only compared with earlier representatives sharing a band. A resume whose estimated
+    // Jaccard similarity to a representative reaches the threshold reuses its features (the same
+    // instance) and joins its group. Representatives are registered before they are extracted, so
+    // concurrent copies wait for one extraction. The representative follows the order resumes are
+    // read, but the copy that is kept is the one whose name sorts first, so every run keeps the same
+    // one; the others are the duplicates.
+    public static class NearDuplicateIndex {
+        private static final int SIGNATURE_SIZE = 128;
+        private static final int SHINGLE_WORDS = 3;
+        private static final int MAX_REPORTED = 10;
+        private static final long[] SEEDS = new SplittableRandom(0x5EEDL).longs(SIGNATURE_SIZE).toArray();
+        
+        private final double threshold;
+        private final int bands;
+        private final int rows;
+        private final List<Map<Long, List<Group>>> buckets = new ArrayList<>();
+        private final List<Group> sharedGroups = new ArrayList<>();   // groups with more than one copy
+        private Set<String> duplicateNames;                          // built once ranking is done
+        private final AtomicInteger resumes = new AtomicInteger();
+        
+        public NearDuplicateIndex(double threshold) {
+            if (!(threshold > 0 && threshold <= 1)) {
+                throw new IllegalArgumentException("Similarity threshold must be in (0, 1]: " + threshold);
+            }
+            this.threshold = threshold;
+            // The most rows per band whose LSH threshold (1/b)^(1/r) stays at or below the
+            // similarity threshold, so near-duplicates share a bucket with high probability
+            int chosen = 1;
+            for (int r = 1; r <= SIGNATURE_SIZE; r *= 2) {
+                if (Math.pow((double) r / SIGNATURE_SIZE, 1.0 / r) <= threshold) {
+                    chosen = r;
+                }
+            }
+            this.rows = chosen;
+            this.bands = SIGNATURE_SIZE / chosen;
+            for (int b = 0; b < bands; b++) {
+                buckets.add(new HashMap<>());
+            }
+        }
+        
+        public ResumeFeatures getOrExtract(Resume resume, CharSequence text, Supplier<ResumeFeatures> extract) {
+            resumes.incrementAndGet();
+            long[] signature = signature(text);
+            long[] bandKeys = new long[bands];
+            for (int b = 0; b < bands; b++) {
+                long key = b;
+                for (int i = b * rows; i < (b + 1) * rows; i++) {
+                    key = mix(key * 31 + signature[i]);
+                }
+                bandKeys[b] = key;
+            }
+            
+            Group match = null;
+            Group own = null;
+            synchronized (this) {
+                double best = threshold;
+                Set<Group> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (int b = 0; b < bands; b++) {
+                    for (Group candidate : buckets.get(b).getOrDefault(bandKeys[b], List.of())) {
+                        if (seen.add(candidate)) {
+                            double similarity = similarity(signature, candidate.signature);
+                            if (similarity >= best) {
+                                best = similarity;
+                                match = candidate;
+                            }
+                        }
+                    }
+                }
+                if (match == null) {
+                    own = new Group(resume, signature);
+                    for (int b = 0; b < bands; b++) {
+                        buckets.get(b).computeIfAbsent(bandKeys[b], k -> new ArrayList<>()).add(own);
+                    }
+                }
+            }
+            
+            if (own != null) {
+                try {
+                    ResumeFeatures features = extract.get();
+                    own.features.complete(features);
+                    return features;
+                } catch (RuntimeException e) {
+                    // Later copies must not wait on a representative that never ranks
+                    synchronized (this) {
+                        for (int b = 0; b < bands; b++) {
+                            buckets.get(b).get(bandKeys[b]).remove(own);
+                        }
+                    }
+                    own.features.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            try {
+                ResumeFeatures features = match.features.join();
+                synchronized (this) {
+                    if (match.names.size() == 1) {
+                        sharedGroups.add(match);
+                    }
+                    match.names.add(resume.getName());
+                }
+                return features;
+            } catch (CompletionException | CancellationException e) {
+                return extract.get();
+            }
+        }
+        
+        // Whether the named resume is a copy other than the first-named of its group; only asked
+        // once every resume has been through getOrExtract
+        public synchronized boolean isDuplicate(String name) {
+            if (duplicateNames == null) {
+                duplicateNames = new HashSet<>();
+                for (Group group : sharedGroups) {
+                    group.names.stream().sorted().skip(1).forEach(duplicateNames::add);
+                }
+            }
+            return duplicateNames.contains(name);
+        }
+        
+        public synchronized String getStatistics() {
+            List<List<String>> groups = sharedGroups.stream()
+                .map(group -> group.names.stream().sorted().collect(Collectors.toList()))
+                .sorted(Comparator.comparing((List<String> names) -> names.get(0)))
+                .collect(Collectors.toList());
+            StringBuilder out = new StringBuilder(String.format(
+                "Near-duplicates: %d of %d resumes reused the features of another copy (similarity >= %.2f, %d bands x %d rows)%n",
+                groups.stream().mapToInt(names -> names.size() - 1).sum(), resumes.get(), threshold, bands, rows));
+            for (List<String> names : groups.subList(0, Math.min(groups.size(), MAX_REPORTED))) {
+                out.append("  ").append(String.join(", ", names.subList(1, names.size())))
+                   .append(" ~ ").append(names.get(0)).append(System.lineSeparator());
+            }
+            return out.toString();
+        }
+        
+        // Min over shingles of SIGNATURE_SIZE seeded hashes; words are case-folded letter/digit runs
+        static long[] signature(CharSequence text) {
+            long[] signature = new long[SIGNATURE_SIZE];
+            Arrays.fill(signature, Long.MAX_VALUE);
+            long[] window = new long[SHINGLE_WORDS];
+            int words = 0;
+            long word = 0;
+            boolean inWord = false;
+            boolean utf8 = text instanceof Utf8Text;
+            for (int i = 0, n = text.length(); i <= n; i++) {
+                char c = i < n ? text.charAt(i) : ' ';
+                if (utf8 && c == Utf8Text.CONTINUATION) {
+                    continue;
+                }
+                if (Character.isLetterOrDigit(c)) {
+                    word = (inWord ? word : 0xcbf29ce484222325L) ^ Character.toLowerCase(c);
+                    word *= 0x100000001b3L;
+                    inWord = true;
+                } else if (inWord) {
+                    inWord = false;
+                    window[words++ % SHINGLE_WORDS] = word;
+                    if (words >= SHINGLE_WORDS) {
+                        addShingle(signature, window, words);
+                    }
+                }
+            }
+            if (words > 0 && words < SHINGLE_WORDS) {
+                addShingle(signature, window, words);
+            }
+            return signature;
+        }
+        
+        private static void addShingle(long[] signature, long[] window, int words) {
+            long shingle = 0;
+            for (int w = Math.max(0, words - SHINGLE_WORDS); w < words; w++) {
+                shingle = mix(shingle * 31 + window[w % SHINGLE_WORDS]);
+            }
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                long h = mix(shingle ^ SEEDS[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        
+        private static double similarity(long[] a, long[] b) {
+            int equal = 0;
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                if (a[i] == b[i]) {
+                    equal++;
+                }
+            }
+            return (double) equal / SIGNATURE_SIZE;
+        }
+        
+        // SplitMix64 finalizer
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+        
+        private static class Group {
+            private final List<String> names = new ArrayList<>();   // the representative first
+            private final long[] signature;
+            private final CompletableFuture<ResumeFeatures> features = new CompletableFuture<>();
+            
+            Group(Resume representative, long[] signature) {
+                this.names.add(representative.getName());
+                this.signature = signature;
+            }
+        }
+    }
+    
+    // Persistent inverted index: canonical skill -> (resume, mention count) postings, queried
+    // with WAND pruning. Resume ids follow name order, so equal scores tie-break like RANKING_ORDER.
+    // Layout: header | postings per term | names | term directory | trailer (section offsets).
+    public static class SkillIndex implements Closeable {
+        private static final int MAGIC = 0x52534958;   // "RSIX"
+        private static final int FORMAT_VERSION = 1;
+        private static final int SKIP_INTERVAL = 64;
+        private static final int TRAILER_SIZE = 20;
+        // Slack against rounding when comparing summed upper bounds with the threshold
+        private static final double BOUND_SLACK = 1 + 1e-9;
+        private static final Comparator<IndexHit> HIT_ORDER =
+            Comparator.comparingDouble((IndexHit h) -> -h.score).thenComparingInt(h -> h.document);
+        
+        private final FileChannel channel;
+        private final MappedByteBuffer data;
+        private final int documentCount;
+        private final int namesOffset;
+        private final Map<String, Term> terms = new HashMap<>();
+        
+        private SkillIndex(FileChannel channel) throws IOException {
+            this.channel = channel;
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE || size < 16 + TRAILER_SIZE) {
+                throw new IOException("Unsupported index size: " + size);
+            }
+            this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != FORMAT_VERSION
+                    || data.getInt((int) size - 4) != MAGIC) {
+                throw new IOException("Not a skill index, or written by another version");
+            }
+            this.documentCount = data.getInt(8);
+            int termCount = data.getInt(12);
+            this.namesOffset = (int) data.getLong((int) size - TRAILER_SIZE);
+            
+            ByteBuffer directory = data.duplicate();
+            directory.position((int) data.getLong((int) size - TRAILER_SIZE + 8));
+            for (int t = 0; t < termCount; t++) {
+                Term term = new Term(readString(directory), directory.getInt(), directory.getInt(),
+                                     directory.getInt(), directory.getInt());
+                int skipCount = directory.getInt();
+                term.skipDocuments = new int[skipCount];
+                term.skipOffsets = new int[skipCount];
+                for (int s = 0; s < skipCount; s++) {
+                    term.skipDocuments[s] = directory.getInt();
+                    term.skipOffsets[s] = directory.getInt();
+                }
+                terms.put(term.name.toLowerCase(Locale.ROOT), term);
+            }
+        }
+        
+        public static SkillIndex open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                return new SkillIndex(channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        
+        // Writes to a temp file next to the target and moves it into place
+        public static void write(Path file, List<IndexedResume> resumes, SkillAutomaton automaton) throws IOException {
+            List<IndexedResume> documents = new ArrayList<>(resumes);
+            documents.sort(Comparator.comparing(d -> d.name));
+            
+            int[] frequencies = new int[automaton.getSkillCount()];
+            for (IndexedResume document : documents) {
+                for (int skillId : document.skillIds) {
+                    frequencies[skillId]++;
+                }
+            }
+            int[][] postingDocuments = new int[frequencies.length][];
+            int[][] postingCounts = new int[frequencies.length][];
+            for (int s = 0; s < frequencies.length; s++) {
+                postingDocuments[s] = new int[frequencies[s]];
+                postingCounts[s] = new int[frequencies[s]];
+            }
+            int[] fill = new int[frequencies.length];
+            for (int d = 0; d < documents.size(); d++) {
+                IndexedResume document = documents.get(d);
+                for (int i = 0; i < document.skillIds.length; i++) {
+                    int skillId = document.skillIds[i];
+                    postingDocuments[skillId][fill[skillId]] = d;
+                    postingCounts[skillId][fill[skillId]++] = document.skillCounts[i];
+                }
+            }
+            
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+                try (DataOutputStream out = new DataOutputStream(counter)) {
+                    int termCount = 0;
+                    for (int frequency : frequencies) {
+                        termCount += frequency > 0 ? 1 : 0;
+                    }
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeInt(documents.size());
+                    out.writeInt(termCount);
+                    
+                    // Postings: varint doc delta + varint count, with a skip entry every SKIP_INTERVAL postings
+                    List<Term> written = new ArrayList<>();
+                    for (int s = 0; s < frequencies.length; s++) {
+                        if (frequencies[s] == 0) {
+                            continue;
+                        }
+                        int start = checkedOffset(counter.count);
+                        int[] docs = postingDocuments[s];
+                        int[] counts = postingCounts[s];
+                        int maxCount = 0;
+                        int skipCount = (docs.length - 1) / SKIP_INTERVAL;
+                        int[] skipDocuments = new int[skipCount];
+                        int[] skipOffsets = new int[skipCount];
+                        for (int i = 0, previous = -1; i < docs.length; previous = docs[i++]) {
+                            if (i > 0 && i % SKIP_INTERVAL == 0) {
+                                skipDocuments[i / SKIP_INTERVAL - 1] = previous;
+                                skipOffsets[i / SKIP_INTERVAL - 1] = checkedOffset(counter.count);
+                            }
+                            FeatureCache.writeVarInt(out, docs[i] - previous);
+                            FeatureCache.writeVarInt(out, counts[i]);
+                            maxCount = Math.max(maxCount, counts[i]);
+                        }
+                        Term term = new Term(automaton.getSkillName(s), docs.length, maxCount,
+                                             start, checkedOffset(counter.count));
+                        term.skipDocuments = skipDocuments;
+                        term.skipOffsets = skipOffsets;
+                        written.add(term);
+                        postingDocuments[s] = null;
+                        postingCounts[s] = null;
+                    }
+                    
+                    // Names: offset table, then the UTF-8 bytes
+                    long names = counter.count;
+                    List<byte[]> encoded = new ArrayList<>(documents.size());
+                    int offset = 0;
+                    for (IndexedResume document : documents) {
+                        byte[] bytes = document.name.getBytes(StandardCharsets.UTF_8);
+                        encoded.add(bytes);
+                        out.writeInt(offset);
+                        offset += bytes.length;
+                    }
+                    out.writeInt(offset);
+                    for (byte[] bytes : encoded) {
+                        out.write(bytes);
+                    }
+                    
+                    long directory = counter.count;
+                    for (Term term : written) {
+                        writeString(out, term.name);
+                        out.writeInt(term.documentFrequency);
+                        out.writeInt(term.maxCount);
+                        out.writeInt(term.start);
+                        out.writeInt(term.end);
+                        out.writeInt(term.skipDocuments.length);
+                        for (int k = 0; k < term.skipDocuments.length; k++) {
+                            out.writeInt(term.skipDocuments[k]);
+                            out.writeInt(term.skipOffsets[k]);
+                        }
+                    }
+                    out.writeLong(names);
+                    out.writeLong(directory);
+                    out.writeInt(MAGIC);
+                    checkedOffset(counter.count);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        
+        // Document-at-a-time WAND: a document is scored only when the summed upper bounds of the
+        // terms positioned at or before it can beat the current K-th score
+        public QueryResult query(Map<String, Double> weights, int limit) {
+            List<PostingCursor> cursors = cursorsFor(weights);
+            PostingCursor[] order = cursors.toArray(new PostingCursor[0]);
+            PriorityQueue<IndexHit> heap = new PriorityQueue<>(limit + 1, HIT_ORDER.reversed());
+            int active = order.length;
+            int scored = 0;
+            
+            while (limit > 0) {
+                // Keep live cursors ordered by current document; exhausted ones sink to the end
+                for (int i = 1; i < active; i++) {
+                    PostingCursor cursor = order[i];
+                    int j = i;
+                    for (; j > 0 && order[j - 1].document > cursor.document; j--) {
+                        order[j] = order[j - 1];
+                    }
+                    order[j] = cursor;
+                }
+                while (active > 0 && order[active - 1].document == PostingCursor.EXHAUSTED) {
+                    active--;
+                }
+                
+                double threshold = heap.size() < limit ? 0 : heap.peek().score;
+                double bound = 0;
+                int pivot = -1;
+                for (int i = 0; i < active; i++) {
+                    bound += order[i].upperBound;
+                    if (bound * BOUND_SLACK > threshold) {
+                        pivot = i;
+                        break;
+                    }
+                }
+                if (pivot < 0) {
+                    break;
+                }
+                
+                int pivotDocument = order[pivot].document;
+                if (order[0].document == pivotDocument) {
+                    // Sum in query order so the result is bit-identical to scan()
+                    double score = 0;
+                    for (PostingCursor cursor : cursors) {
+                        if (cursor.document == pivotDocument) {
+                            score += cursor.contribution();
+                        }
+                    }
+                    scored++;
+                    // Later documents lose ties, so only a strictly better score displaces the K-th
+                    if (heap.size() < limit || score > threshold) {
+                        heap.add(new IndexHit(pivotDocument, score));
+                        if (heap.size() > limit) {
+                            heap.poll();
+                        }
+                    }
+                    for (int i = 0; i < active && order[i].document == pivotDocument; i++) {
+                        order[i].next();
+                    }
+                } else {
+                    // Nothing before the pivot document can reach the threshold
+                    for (int i = 0; i < pivot; i++) {
+                        order[i].skipTo(pivotDocument);
+                    }
+                }
+            }
+            return finish(heap, limit, scored);
+        }
+        
+        // Exhaustive term-at-a-time scoring, for verifying query()
+        public QueryResult scan(Map<String, Double> weights, int limit) {
+            double[] scores = new double[documentCount];
+            for (PostingCursor cursor : cursorsFor(weights)) {
+                for (; cursor.document != PostingCursor.EXHAUSTED; cursor.next()) {
+                    scores[cursor.document] += cursor.contribution();
+                }
+            }
+            PriorityQueue<IndexHit> heap = new PriorityQueue<>(limit + 1, HIT_ORDER.reversed());
+            int scored = 0;
+            for (int d = 0; d < documentCount && limit > 0; d++) {
+                if (scores[d] > 0) {
+                    scored++;
+                    if (heap.size() < limit || scores[d] > heap.peek().score) {
+                        heap.add(new IndexHit(d, scores[d]));
+                        if (heap.size() > limit) {
+                            heap.poll();
+                        }
+                    }
+                }
+            }
+            return finish(heap, limit, scored);
+        }
+        
+        public int getDocumentCount() { return documentCount; }
+        public int getTermCount() { return terms.size(); }
+        
+        public String getName(int document) {
+            int offset = data.getInt(namesOffset + 4 * document);
+            int end = data.getInt(namesOffset + 4 * (document + 1));
+            byte[] bytes = new byte[end - offset];
+            ByteBuffer names = data.duplicate();
+            names.position(namesOffset + 4 * (documentCount + 1) + offset);
+            names.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+        
+        private List<PostingCursor> cursorsFor(Map<String, Double> weights) {
+            List<PostingCursor> cursors = new ArrayList<>();
+            for (Map.Entry<String, Double> weight : weights.entrySet()) {
+                if (weight.getValue() <= 0) {
+                    throw new IllegalArgumentException("Query weights must be positive: " + weight.getKey());
+                }
+                Term term = terms.get(weight.getKey().toLowerCase(Locale.ROOT));
+                if (term == null) {
+                    System.err.println("Warning: skill not in index: " + weight.getKey());
+                    continue;
+                }
+                cursors.add(new PostingCursor(data, term, weight.getValue()));
+            }
+            return cursors;
+        }
+        
+        // Resumes matching no query term score 0 and fill the remaining slots in name order
+        private QueryResult finish(PriorityQueue<IndexHit> heap, int limit, int scored) {
+            List<IndexHit> hits = new ArrayList<>(heap);
+            hits.sort(HIT_ORDER);
+            Set<Integer> taken = hits.stream().map(h -> h.document).collect(Collectors.toSet());
+            for (int d = 0; d < documentCount && hits.size() < limit; d++) {
+                if (!taken.contains(d)) {
+                    hits.add(new IndexHit(d, 0));
+                }
+            }
+            for (IndexHit hit : hits) {
+                hit.name = getName(hit.document);
+            }
+            return new QueryResult(hits, scored);
+        }
+        
+        private static int checkedOffset(long offset) throws IOException {
+            if (offset > Integer.MAX_VALUE - TRAILER_SIZE) {
+                throw new IOException("Skill index exceeds 2 GB");
+            }
+            return (int) offset;
+        }
+        
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            FeatureCache.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+        
+        private static String readString(ByteBuffer in) {
+            byte[] bytes = new byte[readVarInt(in)];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        static int readVarInt(ByteBuffer in) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+        
+        private static class Term {
+            private final String name;
+            private final int documentFrequency;
+            private final int maxCount;
+            private final int start;
+            private final int end;
+            private int[] skipDocuments;   // last document before each skip block
+            private int[] skipOffsets;     // file offset of each skip block
+            
+            Term(String name, int documentFrequency, int maxCount, int start, int end) {
+                this.name = name;
+                this.documentFrequency = documentFrequency;
+                this.maxCount = maxCount;
+                this.start = start;
+                this.end = end;
+            }
+        }
+        
+        private static class PostingCursor {
+            static final int EXHAUSTED = Integer.MAX_VALUE;
+            
+            private final ByteBuffer postings;
+            private final Term term;
+            private final double weight;
+            private final double upperBound;
+            private int nextSkip;
+            private int document = -1;
+            private int count;
+            
+            PostingCursor(MappedByteBuffer data, Term term, double weight) {
+                this.postings = data.duplicate();
+                this.postings.position(term.start);
+                this.term = term;
+                this.weight = weight;
+                this.upperBound = Math.min(term.maxCount, MAX_SKILL_MENTIONS) * weight * SKILL_WEIGHT;
+                next();
+            }
+            
+            // Same expression as ScoringPlan.score, so index and full ranking agree on skill points
+            double contribution() {
+                return Math.min(count, MAX_SKILL_MENTIONS) * weight * SKILL_WEIGHT;
+            }
+            
+            void next() {
+                if (postings.position() >= term.end) {
+                    document = EXHAUSTED;
+                    return;
+                }
+                document += readVarInt(postings);
+                count = readVarInt(postings);
+            }
+            
+            void skipTo(int target) {
+                while (nextSkip < term.skipDocuments.length && term.skipDocuments[nextSkip] < target) {
+                    if (term.skipDocuments[nextSkip] > document) {
+                        document = term.skipDocuments[nextSkip];
+                        postings.position(term.skipOffsets[nextSkip]);
+                    }
+                    nextSkip++;
+                }
+                while (document < target) {
+                    next();
+                }
+            }
+        }
+        
+        private static class CountingOutputStream extends FilterOutputStream {
+            private long count;
+            
+            CountingOutputStream(OutputStream out) {
+                super(out);
+            }
+            
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                count++;
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                count += len;
+            }
+        }
+    }
+    
+    public static class IndexedResume {
+        private final String name;
+        private final int[] skillIds;
+        private final int[] skillCounts;
+        
+        public IndexedResume(String name, ResumeFeatures features) {
+            this.name = name;
+            this.skillIds = features.getSkillIds();
+            this.skillCounts = features.getSkillCounts();
+        }
+    }
+    
+    public static class IndexHit {
+        private final int document;
+        private final double score;
+        private String name;
+        
+        IndexHit(int document, double score) {
+            this.document = document;
+            this.score = score;
+        }
+        
+        public String getName() { return name; }
+        public double getScore() { return score; }
+    }
+    
+    public static class QueryResult {
+        private final List<IndexHit> hits;
+        private final int scoredDocuments;
+        
+        QueryResult(List<IndexHit> hits, int scoredDocuments) {
+            this.hits = hits;
+            this.scoredDocuments = scoredDocuments;
+        }
+        
+        public List<IndexHit> getHits() { return hits; }
+        public int getScoredDocuments() { return scoredDocuments; }
+    }
+    
+    // Extracted features as memory-mapped little-endian columns, so a new set of weights re-scores
+    // every resume in a few sequential passes without touching the resumes or the heap:
+    //   header | years[n] | top skills[n * TOP_SKILLS] | skill postings (CSR: starts[skills + 1],
+    //   documents[], counts[]) | education, certifications, projects (CSR: starts[n + 1],
+    //   value ids[], string table) | names (string table) | knowledge base version (string table)
+    // A string table is count, offsets[count + 1] and the UTF-8 bytes. Documents follow name order,
+    // so ties break like RANKING_ORDER. Skill ids are only valid for the recorded knowledge base.
+    public static class FeatureStore implements Closeable {
+        private static final int MAGIC = 0x52534353;   // "RSCS"
+        private static final int FORMAT_VERSION = 1;
+        private static final int TOP_SKILLS = 5;
+        private static final int HEADER_INTS = 24;
+        
+        private final FileChannel channel;
+        private final ByteBuffer data;
+        private final int documentCount;
+        private final int skillCount;
+        private final IntBuffer years;
+        private final IntBuffer topSkills;
+        private final IntBuffer skillStarts;
+        private final IntBuffer postingDocuments;
+        private final IntBuffer postingCounts;
+        private final ListColumn education;
+        private final ListColumn certifications;
+        private final ListColumn projects;
+        private final StringTable names;
+        
+        private FeatureStore(FileChannel channel, String knowledgeBaseVersion) throws IOException {
+            this.channel = channel;
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE || size < 4 * HEADER_INTS) {
+                throw new IOException("Unsupported feature store size: " + size);
+            }
+            this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Not a feature store, or written by another version");
+            }
+            this.documentCount = data.getInt(8);
+            this.skillCount = data.getInt(12);
+            int postings = data.getInt(16);
+            this.years = ints(data.getInt(20), documentCount);
+            this.topSkills = ints(data.getInt(24), documentCount * TOP_SKILLS);
+            this.skillStarts = ints(data.getInt(28), skillCount + 1);
+            this.postingDocuments = ints(data.getInt(32), postings);
+            this.postingCounts = ints(data.getInt(36), postings);
+            this.education = listColumn(40);
+            this.certifications = listColumn(52);
+            this.projects = listColumn(64);
+            this.names = new StringTable(data.getInt(76));
+            String version = new StringTable(data.getInt(80)).get(0);
+            if (!version.equals(knowledgeBaseVersion)) {
+                throw new IOException("Feature store was built with knowledge base " + version
+                    + "; the skill files have changed since, so rebuild it");
+            }
+        }
+        
+        public static FeatureStore open(Path file, String knowledgeBaseVersion) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                return new FeatureStore(channel, knowledgeBaseVersion);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        
+        // Writes to a temp file next to the target and moves it into place
+        public static void write(Path file, List<StoredResume> resumes, int skillCount, String knowledgeBaseVersion)
+                throws IOException {
+            List<StoredResume> documents = new ArrayList<>(resumes);
+            documents.sort(Comparator.comparing(d -> d.name));
+            int n = documents.size();
+            
+            int[] skillStarts = new int[skillCount + 1];
+            for (StoredResume document : documents) {
+                for (int skillId : document.skillIds) {
+                    skillStarts[skillId + 1]++;
+                }
+            }
+            for (int s = 0; s < skillCount; s++) {
+                skillStarts[s + 1] += skillStarts[s];
+            }
+            int[] postingDocuments = new int[skillStarts[skillCount]];
+            int[] postingCounts = new int[postingDocuments.length];
+            int[] fill = Arrays.copyOf(skillStarts, skillCount);
+            for (int d = 0; d < n; d++) {
+                StoredResume document = documents.get(d);
+                for (int i = 0; i < document.skillIds.length; i++) {
+                    int slot = fill[document.skillIds[i]]++;
+                    postingDocuments[slot] = d;
+                    postingCounts[slot] = document.skillCounts[i];
+                }
+            }
+            
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                int[] header = new int[HEADER_INTS];
+                header[0] = MAGIC;
+                header[1] = FORMAT_VERSION;
+                header[2] = n;
+                header[3] = skillCount;
+                header[4] = postingDocuments.length;
+                SkillIndex.CountingOutputStream counter =
+                    new SkillIndex.CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+                try (DataOutputStream out = new DataOutputStream(counter)) {
+                    writeInts(out, new int[HEADER_INTS]);
+                    header[5] = checkedOffset(counter.count);
+                    for (StoredResume document : documents) {
+                        out.writeInt(Integer.reverseBytes(document.yearsExperience));
+                    }
+                    header[6] = checkedOffset(counter.count);
+                    for (StoredResume document : documents) {
+                        for (int i = 0; i < TOP_SKILLS; i++) {
+                            out.writeInt(Integer.reverseBytes(i < document.topSkillIds.length ? document.topSkillIds[i] : -1));
+                        }
+                    }
+                    header[7] = checkedOffset(counter.count);
+                    writeInts(out, skillStarts);
+                    header[8] = checkedOffset(counter.count);
+                    writeInts(out, postingDocuments);
+                    header[9] = checkedOffset(counter.count);
+                    writeInts(out, postingCounts);
+                    writeListColumn(out, counter, header, 10, documents, d -> d.education);
+                    writeListColumn(out, counter, header, 13, documents, d -> d.certifications);
+                    writeListColumn(out, counter, header, 16, documents, d -> d.projects);
+                    header[19] = checkedOffset(counter.count);
+                    writeStringTable(out, documents.stream().map(d -> d.name).collect(Collectors.toList()));
+                    header[20] = checkedOffset(counter.count);
+                    writeStringTable(out, List.of(knowledgeBaseVersion));
+                    checkedOffset(counter.count);
+                }
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(4 * HEADER_INTS).order(ByteOrder.LITTLE_ENDIAN);
+                    buffer.asIntBuffer().put(header);
+                    channel.write(buffer, 0);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        
+        // Adds the points of each feature type in the order ScoringPlan.score does, so every
+        // score is bit-identical to scoring the extracted features directly
+        public double[] score(ScoringPlan plan) {
+            if (plan.getAutomaton().getSkillCount() != skillCount) {
+                throw new IllegalArgumentException("Scoring plan was compiled against another knowledge base");
+            }
+            double[] scores = new double[documentCount];
+            
+            // Required skills in ascending id order, one scatter pass over each posting list
+            double[] points = new double[MAX_SKILL_MENTIONS + 1];
+            for (int skillId : plan.getRequiredSkillIds()) {
+                if (plan.getSkillWeight(skillId) == 0) {
+                    continue;
+                }
+                for (int count = 0; count <= MAX_SKILL_MENTIONS; count++) {
+                    points[count] = plan.skillPoints(skillId, count);
+                }
+                for (int i = skillStarts.get(skillId), end = skillStarts.get(skillId + 1); i < end; i++) {
+                    scores[postingDocuments.get(i)] += points[Math.min(postingCounts.get(i), MAX_SKILL_MENTIONS)];
+                }
+            }
+            
+            double[] experience = new double[MAX_EXPERIENCE_YEARS + 1];
+            for (int y = 0; y <= MAX_EXPERIENCE_YEARS; y++) {
+                experience[y] = plan.experiencePoints(y);
+            }
+            for (int d = 0; d < documentCount; d++) {
+                scores[d] += experience[Math.min(years.get(d), MAX_EXPERIENCE_YEARS)];
+            }
+            
+            addListPoints(scores, education, plan::degreePoints);
+            addListPoints(scores, certifications, plan::certificationPoints);
+            if (plan.hasKeywords()) {
+                addListPoints(scores, projects, plan::projectPoints);
+            }
+            return scores;
+        }
+        
+        // Best `limit` documents as ranking rows, score descending then name
+        public List<RankingEntry> top(double[] scores, int limit, SkillAutomaton automaton) {
+            PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1,
+                (a, b) -> a.equals(b) ? 0 : scores[a] != scores[b] ? Double.compare(scores[a], scores[b]) : b - a);
+            for (int d = 0; d < documentCount && limit > 0; d++) {
+                if (heap.size() < limit) {
+                    heap.add(d);
+                } else if (scores[d] > scores[heap.peek()]) {
+                    heap.poll();
+                    heap.add(d);
+                }
+            }
+            List<Integer> ranked = new ArrayList<>(heap);
+            ranked.sort(Comparator.comparingDouble((Integer d) -> -scores[d]).thenComparingInt(d -> d));
+            List<RankingEntry> entries = new ArrayList<>(ranked.size());
+            for (int d : ranked) {
+                StringJoiner skills = new StringJoiner(";");
+                for (int i = 0; i < TOP_SKILLS && topSkills.get(d * TOP_SKILLS + i) >= 0; i++) {
+                    skills.add(automaton.getSkillName(topSkills.get(d * TOP_SKILLS + i)));
+                }
+                entries.add(new RankingEntry(names.get(d), scores[d], skills.toString(), years.get(d),
+                    String.join(";", education.values(d))));
+            }
+            return entries;
+        }
+        
+        // Rebuilds each document's features and scores them the ordinary way; returns the mismatches
+        public int verify(ScoringPlan plan, double[] scores) {
+            int[] starts = new int[documentCount + 1];
+            for (int i = 0; i < postingDocuments.limit(); i++) {
+                starts[postingDocuments.get(i) + 1]++;
+            }
+            for (int d = 0; d < documentCount; d++) {
+                starts[d + 1] += starts[d];
+            }
+            int[] skillIds = new int[postingDocuments.limit()];
+            int[] skillCounts = new int[skillIds.length];
+            int[] fill = Arrays.copyOf(starts, documentCount);
+            for (int s = 0; s < skillCount; s++) {
+                for (int i = skillStarts.get(s); i < skillStarts.get(s + 1); i++) {
+                    int slot = fill[postingDocuments.get(i)]++;
+                    skillIds[slot] = s;
+                    skillCounts[slot] = postingCounts.get(i);
+                }
+            }
+            int mismatches = 0;
+            for (int d = 0; d < documentCount; d++) {
+                ResumeFeatures features = new ResumeFeatures(
+                    Arrays.copyOfRange(skillIds, starts[d], starts[d + 1]),
+                    Arrays.copyOfRange(skillCounts, starts[d], starts[d + 1]),
+                    new int[0], years.get(d), education.values(d), certifications.values(d), projects.values(d));
+                if (Double.doubleToLongBits(plan.score(features)) != Double.doubleToLongBits(scores[d])) {
+                    mismatches++;
+                }
+            }
+            return mismatches;
+        }
+        
+        public int getDocumentCount() { return documentCount; }
+        
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+        
+        // Each distinct value is evaluated once; the per-document pass is then just array reads
+        private void addListPoints(double[] scores, ListColumn column, ToDoubleFunction<String> pointsFor) {
+            double[] points = IntStream.range(0, column.dictionary.count).parallel()
+                .mapToDouble(id -> pointsFor.applyAsDouble(column.dictionary.get(id)))
+                .toArray();
+            if (Arrays.stream(points).allMatch(p -> p == 0)) {
+                return;
+            }
+            for (int d = 0; d < documentCount; d++) {
+                for (int i = column.starts.get(d), end = column.starts.get(d + 1); i < end; i++) {
+                    scores[d] += points[column.ids.get(i)];
+                }
+            }
+        }
+        
+        private IntBuffer ints(int offset, int count) {
+            ByteBuffer slice = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            slice.position(offset).limit(offset + 4 * count);
+            return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        
+        private ListColumn listColumn(int headerOffset) {
+            IntBuffer starts = ints(data.getInt(headerOffset), documentCount + 1);
+            return new ListColumn(starts, ints(data.getInt(headerOffset + 4), starts.get(documentCount)),
+                                  new StringTable(data.getInt(headerOffset + 8)));
+        }
+        
+        private static void writeListColumn(DataOutputStream out, SkillIndex.CountingOutputStream counter, int[] header,
+                                            int slot, List<StoredResume> documents,
+                                            Function<StoredResume, List<String>> values) throws IOException {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            header[slot] = checkedOffset(counter.count);
+            int start = 0;
+            out.writeInt(Integer.reverseBytes(start));
+            for (StoredResume document : documents) {
+                start += values.apply(document).size();
+                out.writeInt(Integer.reverseBytes(start));
+            }
+            header[slot + 1] = checkedOffset(counter.count);
+            for (StoredResume document : documents) {
+                for (String value : values.apply(document)) {
+                    Integer id = dictionary.get(value);
+                    if (id == null) {
+                        id = dictionary.size();
+                        dictionary.put(value, id);
+                    }
+                    out.writeInt(Integer.reverseBytes(id));
+                }
+            }
+            header[slot + 2] = checkedOffset(counter.count);
+            writeStringTable(out, new ArrayList<>(dictionary.keySet()));
+        }
+        
+        private static void writeStringTable(DataOutputStream out, List<String> values) throws IOException {
+            List<byte[]> encoded = new ArrayList<>(values.size());
+            out.writeInt(Integer.reverseBytes(values.size()));
+            int offset = 0;
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                out.writeInt(Integer.reverseBytes(offset));
+                offset += bytes.length;
+            }
+            out.writeInt(Integer.reverseBytes(offset));
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+            // Keep the next int column aligned
+            for (int pad = offset % 4; pad > 0 && pad < 4; pad++) {
+                out.write(0);
+            }
+        }
+        
+        private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+            for (int value : values) {
+                out.writeInt(Integer.reverseBytes(value));
+            }
+        }
+        
+        private static int checkedOffset(long offset) throws IOException {
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Feature store exceeds 2 GB");
+            }
+            return (int) offset;
+        }
+        
+        private static class ListColumn {
+            private final IntBuffer starts;
+            private final IntBuffer ids;
+            private final StringTable dictionary;
+            
+            ListColumn(IntBuffer starts, IntBuffer ids, StringTable dictionary) {
+                this.starts = starts;
+                this.ids = ids;
+                this.dictionary = dictionary;
+            }
+            
+            List<String> values(int document) {
+                List<String> values = new ArrayList<>();
+                for (int i = starts.get(document); i < starts.get(document + 1); i++) {
+                    values.add(dictionary.get(ids.get(i)));
+                }
+                return values;
+            }
+        }
+        
+        private class StringTable {
+            private final int count;
+            private final IntBuffer offsets;
+            private final int bytesOffset;
+            
+            StringTable(int offset) {
+                this.count = data.getInt(offset);
+                this.offsets = ints(offset + 4, count + 1);
+                this.bytesOffset = offset + 4 * (count + 2);
+            }
+            
+            String get(int id) {
+                int start = offsets.get(id);
+                byte[] bytes = new byte[offsets.get(id + 1) - start];
+                ByteBuffer view = data.duplicate();
+                view.position(bytesOffset + start);
+                view.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+    }
+    
+    // What the feature store keeps of a resume
+    public static class StoredResume {
+        private final String name;
+        private final int[] skillIds;
+        private final int[] skillCounts;
+        private final int[] topSkillIds;
+        private final int yearsExperience;
+        private final List<String> education;
+        private final List<String> certifications;
+        private final List<String> projects;
+        
+        public StoredResume(String name, ResumeFeatures features) {
+            this.name = name;
+            this.skillIds = features.getSkillIds();
+            this.skillCounts = features.getSkillCounts();
+            this.topSkillIds = features.getTopSkillIds(FeatureStore.TOP_SKILLS);
+            this.yearsExperience = features.getYearsExperience();
+            this.education = features.getEducation();
+            this.certifications = features.getCertifications();
+            this.projects = features.getProjects();
+        }
+    }
+    
+    // Offline-compiled knowledge base (--compile-kb): the automaton tables, the canonical skill id
+    // table and the extractor's marker ids, so startup maps one file instead of reading the skill
+    // lists and rebuilding the automaton. The size and modification time of each source file are
+    // recorded; an artifact whose sources are missing or have changed since, or whose version differs
+    // from the one the current markers and extraction rules give its skills, is ignored with a warning.
+    // Layout: magic | format | extractor version | sources | marker ids | skill names | tables | magic
+    public static class CompiledKnowledgeBase {
+        private static final int MAGIC = 0x52534B42;   // "RSKB"
+        private static final int FORMAT_VERSION = 1;
+        
+        // Writes to a temp file next to the target and moves it into place
+        public static void write(Path file, FeatureExtractor extractor, List<Path> sources) throws IOException {
+            SkillAutomaton automaton = extractor.getAutomaton();
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    writeString(out, extractor.getVersion());
+                    out.writeInt(sources.size());
+                    for (Path source : sources) {
+                        writeString(out, source.toString());
+                        out.writeLong(Files.size(source));
+                        out.writeLong(Files.getLastModifiedTime(source).toMillis());
+                    }
+                    out.writeInt(extractor.degreeStart);
+                    out.writeInt(extractor.fieldStart);
+                    out.writeInt(extractor.certificationStart);
+                    out.writeInt(extractor.projectMarker);
+                    out.writeInt(automaton.skillNames.length);
+                    for (String skill : automaton.skillNames) {
+                        writeString(out, skill);
+                    }
+                    writeInts(out, automaton.patternLengths);
+                    writeFlags(out, automaton.wordStart);
+                    writeFlags(out, automaton.wordEnd);
+                    writeInts(out, automaton.asciiSymbols);
+                    out.writeInt(automaton.extendedChars.length);
+                    for (char c : automaton.extendedChars) {
+                        out.writeChar(c);
+                    }
+                    out.writeInt(automaton.alphabetSize);
+                    writeInts(out, automaton.transitions);
+                    writeInts(out, automaton.outputOffsets);
+                    writeInts(out, automaton.outputs);
+                    out.writeInt(MAGIC);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        
+        // The compiled extractor, or null (after a warning) when it is stale
+        public static FeatureExtractor loadIfCurrent(Path file) throws IOException {
+            ByteBuffer in;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE || channel.size() < 12) {
+                    throw new IOException("Unsupported knowledge base size: " + channel.size());
+                }
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION || in.getInt(in.limit() - 4) != MAGIC) {
+                throw new IOException("Not a compiled knowledge base, or written by another version");
+            }
+            try {
+                String version = readString(in);
+                int sourceCount = in.getInt();
+                for (int s = 0; s < sourceCount; s++) {
+                    Path source = Paths.get(readString(in));
+                    long size = in.getLong();
+                    long modified = in.getLong();
+                    if (!Files.exists(source) || Files.size(source) != size
+                            || Files.getLastModifiedTime(source).toMillis() != modified) {
+                        System.err.println("Warning: " + source + " is missing or changed after " + file
+                            + " was compiled; building from the skill files (re-run --compile-kb)");
+                        return null;
+                    }
+                }
+                int degreeStart = in.getInt();
+                int fieldStart = in.getInt();
+                int certificationStart = in.getInt();
+                int projectMarker = in.getInt();
+                String[] skillNames = new String[in.getInt()];
+                for (int id = 0; id < skillNames.length; id++) {
+                    skillNames[id] = readString(in);
+                }
+                // Markers and rules live in the code, so an edit there leaves the sources unchanged
+                if (!version.equals(FeatureExtractor.fingerprint(skillNames,
+                        FeatureExtractor.markers(DEGREE_TYPES, FIELDS_OF_STUDY, TECH_CERTIFICATIONS)))) {
+                    System.err.println("Warning: " + file + " was compiled with other markers or extraction rules;"
+                        + " building from the skill files (re-run --compile-kb)");
+                    return null;
+                }
+                int[] patternLengths = readInts(in);
+                boolean[] wordStart = readFlags(in);
+                boolean[] wordEnd = readFlags(in);
+                int[] asciiSymbols = readInts(in);
+                char[] extendedChars = new char[in.getInt()];
+                in.asCharBuffer().get(extendedChars);
+                in.position(in.position() + 2 * extendedChars.length);
+                int alphabetSize = in.getInt();
+                int[] transitions = readInts(in);
+                int[] outputOffsets = readInts(in);
+                int[] outputs = readInts(in);
+                if (in.remaining() != 4) {
+                    throw new IOException("Corrupt knowledge base");
+                }
+                SkillAutomaton automaton = new SkillAutomaton(skillNames, patternLengths, wordStart, wordEnd,
+                    asciiSymbols, extendedChars, alphabetSize, transitions, outputOffsets, outputs);
+                return new FeatureExtractor(automaton, degreeStart, fieldStart, certificationStart, projectMarker, version);
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                throw new IOException("Corrupt knowledge base", e);
+            }
+        }
+        
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        
+        private static String readString(ByteBuffer in) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+            out.writeInt(values.length);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+        
+        // One bulk copy out of the mapping per table
+        private static int[] readInts(ByteBuffer in) {
+            int[] values = new int[in.getInt()];
+            in.asIntBuffer().get(values);
+            in.position(in.position() + 4 * values.length);
+            return values;
+        }
+        
+        private static void writeFlags(DataOutputStream out, boolean[] flags) throws IOException {
+            out.writeInt(flags.length);
+            for (boolean flag : flags) {
+                out.writeBoolean(flag);
+            }
+        }
+        
+        private static boolean[] readFlags(ByteBuffer in) {
+            boolean[] flags = new boolean[in.getInt()];
+            for (int i = 0; i < flags.length; i++) {
+                flags[i] = in.get() != 0;
+            }
+            return flags;
+        }
+    }
+    
+    // Skill lists compiled into an extractor. Immutable: a reload builds a new instance and swaps
+    // the reference, so work in flight keeps the matchers it started with.
+    public static class KnowledgeBase {
+        private final FeatureExtractor extractor;
+        
+        KnowledgeBase(FeatureExtractor extractor) {
+            this.extractor = extractor;
+        }
+        
+        // Always from the skill files; a missing or unreadable file is an error
+        public static KnowledgeBase load(Path technicalSkills, Path softSkills) throws IOException {
+            return new KnowledgeBase(new FeatureExtractor(readSkills(technicalSkills), readSkills(softSkills),
+                DEGREE_TYPES, FIELDS_OF_STUDY, TECH_CERTIFICATIONS));
+        }
+        
+        public FeatureExtractor getExtractor() { return extractor; }
+        public SkillAutomaton getAutomaton() { return extractor.getAutomaton(); }
+        public String getVersion() { return extractor.getVersion(); }
+    }
+    
+    // Daemon mode: HTTP on the loopback interface. Requests that arrive close together are scored as
+    // one batch in which each distinct resume text is extracted once. The skill files are watched,
+    // and rebuilt matchers replace the current ones atomically.
+    //   POST /rank[?top=K]  body: job spec lines, then "%%RESUME <name>" sections; answers with the CSV
+    //   GET  /health        knowledge base version and counters
+    //   POST /reload        rebuild the knowledge base now
+    public static class ShortlistService implements Closeable {
+        private static final String RESUME_MARKER = "%%RESUME ";
+        private static final long BATCH_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+        private static final int MAX_BATCH_REQUESTS = 64;
+        private static final long RELOAD_DEBOUNCE_MILLIS = 250;
+        private static final long REQUEST_TIMEOUT_SECONDS = 120;
+        private static final int MAX_REQUEST_BYTES = 64 << 20;
+        
+        private final AdvancedResumeShortlister shortlister;
+        private final Path technicalSkills;
+        private final Path softSkills;
+        private final AtomicReference<KnowledgeBase> knowledgeBase;
+        private final BlockingQueue<RankRequest> pending = new LinkedBlockingQueue<>();
+        private final ExecutorService extractors = Executors.newFixedThreadPool(MAX_THREADS);
+        private final ExecutorService handlers = newIoExecutor();
+        private final HttpServer server;
+        private Thread batcher;      // created by start()
+        private Thread watcher;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong extracted = new AtomicLong();
+        private final AtomicLong deduplicated = new AtomicLong();
+        private final AtomicLong reloads = new AtomicLong();
+        private volatile boolean running = true;
+        
+        public ShortlistService(AdvancedResumeShortlister shortlister, int port, Path technicalSkills,
+                                Path softSkills, KnowledgeBase initial) throws IOException {
+            this.shortlister = shortlister;
+            this.technicalSkills = technicalSkills.toAbsolutePath();
+            this.softSkills = softSkills.toAbsolutePath();
+            this.knowledgeBase = new AtomicReference<>(initial);
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.setExecutor(handlers);
+        }
+        
+        // Handlers and threads are wired up here rather than in the constructor, so they never see
+        // a partly constructed service
+        public synchronized void start() {
+            server.createContext("/rank", this::handleRank);
+            server.createContext("/health", this::handleHealth);
+            server.createContext("/reload", this::handleReload);
+            batcher = new Thread(this::runBatches, "shortlist-batcher");
+            watcher = new Thread(this::watchSkillFiles, "skill-file-watcher");
+            batcher.setDaemon(true);
+            watcher.setDaemon(true);
+            batcher.start();
+            watcher.start();
+            server.start();
+        }
+        
+        public int getPort() {
+            return server.getAddress().getPort();
+        }
+        
+        // Runs generated resumes through the current matchers so the first requests hit compiled code.
+        // No sample lines, so the warm-up is the same wherever the service was started.
+        public void warmUp(int resumes) throws IOException {
+            KnowledgeBase kb = knowledgeBase.get();
+            CorpusGenerator generator = new CorpusGenerator(1, 4000, 0.05, null, kb.getAutomaton());
+            long sum = 0;
+            for (int i = 0; i < resumes; i++) {
+                sum += kb.getExtractor().extract(generator.generate(i % 100)).getSkillIds().length;
+            }
+            BenchmarkSuite.consume(sum);
+        }
+        
+        // Swaps in matchers rebuilt from the skill files; on failure the current ones stay
+        public boolean reload() {
+            try {
+                KnowledgeBase next = KnowledgeBase.load(technicalSkills, softSkills);
+                KnowledgeBase current = knowledgeBase.get();
+                if (next.getAutomaton().getSkillCount() == 0 && current.getAutomaton().getSkillCount() > 0) {
+                    System.err.println("Skill files are empty; keeping knowledge base " + current.getVersion());
+                    return false;
+                }
+                if (next.getVersion().equals(current.getVersion())) {
+                    return false;
+                }
+                knowledgeBase.set(next);
+                reloads.incrementAndGet();
+                System.out.println("Knowledge base reloaded: " + current.getVersion() + " -> " + next.getVersion()
+                    + " (" + next.getAutomaton().getSkillCount() + " skills)");
+                return true;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Knowledge base reload failed, keeping the current one: " + e.getMessage());
+                return false;
+            }
+        }
+        
+        @Override
+        public synchronized void close() {
+            running = false;
+            server.stop(1);
+            if (batcher != null) {
+                batcher.interrupt();
+                watcher.interrupt();
+            }
+            for (RankRequest request = pending.poll(); request != null; request = pending.poll()) {
+                request.result.completeExceptionally(new IllegalStateException("service stopped"));
+            }
+            extractors.shutdown();
+            handlers.shutdown();
+        }
+        
+        private void handleRank(HttpExchange exchange) throws IOException {
+            try {
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    respond(exchange, 405, "text/plain", "POST a job spec followed by %%RESUME sections\n");
+                    return;
+                }
+                if (!running) {
+                    respond(exchange, 503, "text/plain", "Shutting down\n");
+                    return;
+                }
+                byte[] body = exchange.getRequestBody().readNBytes(MAX_REQUEST_BYTES + 1);
+                if (body.length > MAX_REQUEST_BYTES) {
+                    respond(exchange, 413, "text/plain", "Request larger than " + MAX_REQUEST_BYTES + " bytes\n");
+                    return;
+                }
+                
+                // The knowledge base is fixed for the whole request, even if a reload lands meanwhile
+                KnowledgeBase kb = knowledgeBase.get();
+                List<String> jobLines = new ArrayList<>();
+                List<Resume> resumes = new ArrayList<>();
+                parseRankRequest(new String(body, StandardCharsets.UTF_8), jobLines, resumes);
+                ScoringPlan plan = ScoringPlan.compile(shortlister.parseJobRequirements(jobLines), kb.getAutomaton());
+                int top = queryInt(exchange.getRequestURI().getQuery(), "top", Integer.MAX_VALUE);
+                
+                RankRequest request = new RankRequest(kb, plan, resumes);
+                requests.incrementAndGet();
+                pending.add(request);
+                List<RankedResume> ranking = request.result.get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                
+                StringWriter csv = new StringWriter();
+                try (RankingWriter writer = new CsvRankingWriter(new BufferedWriter(csv), false)) {
+                    writer.writeAll(null, ranking.stream().limit(top).map(RankingEntry::of).iterator());
+                }
+                exchange.getResponseHeaders().set("X-Knowledge-Base", kb.getVersion());
+                respond(exchange, 200, "text/csv; charset=utf-8", csv.toString());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, "text/plain", "Bad request: " + e.getMessage() + "\n");
+            } catch (TimeoutException e) {
+                respond(exchange, 504, "text/plain", "Ranking timed out\n");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "text/plain", "Interrupted\n");
+            } catch (ExecutionException | RuntimeException e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                respond(exchange, 500, "text/plain", "Ranking failed: " + cause + "\n");
+            } finally {
+                exchange.close();
+            }
+        }
+        
+        private void handleHealth(HttpExchange exchange) throws IOException {
+            try {
+                KnowledgeBase kb = knowledgeBase.get();
+                respond(exchange, 200, "application/json", String.format(
+                    "{\"status\": \"ok\", \"knowledgeBase\": \"%s\", \"skills\": %d, \"reloads\": %d, \"requests\": %d, "
+                        + "\"batches\": %d, \"resumesExtracted\": %d, \"resumesDeduplicated\": %d}%n",
+                    kb.getVersion(), kb.getAutomaton().getSkillCount(), reloads.get(), requests.get(),
+                    batches.get(), extracted.get(), deduplicated.get()));
+            } finally {
+                exchange.close();
+            }
+        }
+        
+        private void handleReload(HttpExchange exchange) throws IOException {
+            try {
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    respond(exchange, 405, "text/plain", "POST to reload\n");
+                    return;
+                }
+                boolean changed = reload();
+                respond(exchange, 200, "text/plain",
+                    (changed ? "Reloaded " : "Unchanged ") + knowledgeBase.get().getVersion() + "\n");
+            } finally {
+                exchange.close();
+            }
+        }
+        
+        // Lines before the first marker are the job spec; each marker starts a resume that runs to
+        // the next marker, with its original line endings
+        static void parseRankRequest(String body, List<String> jobLines, List<Resume> resumes) {
+            String name = null;
+            int contentStart = 0;
+            int lineStart = 0;
+            while (lineStart < body.length()) {
+                int lineEnd = body.indexOf('\n', lineStart);
+                int next = lineEnd < 0 ? body.length() : lineEnd + 1;
+                if (body.startsWith(RESUME_MARKER, lineStart)) {
+                    if (name != null) {
+                        resumes.add(new Resume(name, body.substring(contentStart, lineStart)));
+                    }
+                    name = body.substring(lineStart + RESUME_MARKER.length(), lineEnd < 0 ? body.length() : lineEnd).trim();
+                    if (name.isEmpty()) {
+                        throw new IllegalArgumentException("resume marker without a name");
+                    }
+                    contentStart = next;
+                } else if (name == null) {
+                    jobLines.add(body.substring(lineStart, lineEnd < 0 ? body.length() : lineEnd).replace("\r", ""));
+                }
+                lineStart = next;
+            }
+            if (name != null) {
+                resumes.add(new Resume(name, body.substring(contentStart)));
+            }
+            if (resumes.isEmpty()) {
+                throw new IllegalArgumentException("no " + RESUME_MARKER.trim() + " sections");
+            }
+        }
+        
+        private static int queryInt(String query, String key, int defaultValue) {
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    if (parameter.startsWith(key + "=")) {
+                        return Integer.parseInt(parameter.substring(key.length() + 1));
+                    }
+                }
+            }
+            return defaultValue;
+        }
+        
+        private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        
+        // Collects the requests that arrive within a short window of the first one, then scores them
+        // together; while a batch runs, the next one accumulates
+        private void runBatches() {
+            while (running) {
+                try {
+                    RankRequest first = pending.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    List<RankRequest> batch = new ArrayList<>();
+                    batch.add(first);
+                    long deadline = System.nanoTime() + BATCH_WINDOW_NANOS;
+                    while (batch.size() < MAX_BATCH_REQUESTS) {
+                        RankRequest next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    scoreBatch(batch);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+        
+        private void scoreBatch(List<RankRequest> batch) throws InterruptedException {
+            batches.incrementAndGet();
+            
+            // Identical resume text is extracted once per knowledge base, whichever request sent it
+            Map<KnowledgeBase, Map<String, Future<ResumeFeatures>>> extractions = new IdentityHashMap<>();
+            for (RankRequest request : batch) {
+                Map<String, Future<ResumeFeatures>> byContent = extractions.computeIfAbsent(request.knowledgeBase, kb -> new HashMap<>());
+                for (Resume resume : request.resumes) {
+                    if (byContent.containsKey(resume.getContent())) {
+                        deduplicated.incrementAndGet();
+                    } else {
+                        FeatureExtractor extractor = request.knowledgeBase.getExtractor();
+                        byContent.put(resume.getContent(), extractors.submit(() -> extractor.extract(resume.getContent())));
+                        extracted.incrementAndGet();
+                    }
+                }
+            }
+            
+            for (RankRequest request : batch) {
+                Map<String, Future<ResumeFeatures>> byContent = extractions.get(request.knowledgeBase);
+                try {
+                    List<RankedResume> ranking = new ArrayList<>(request.resumes.size());
+                    for (Resume resume : request.resumes) {
+                        ResumeFeatures features = byContent.get(resume.getContent()).get();
+                        ranking.add(new RankedResume(resume, features, request.plan.score(features), request.plan));
+                    }
+                    ranking.sort(RANKING_ORDER);
+                    request.result.complete(ranking);
+                } catch (ExecutionException e) {
+                    request.result.completeExceptionally(e.getCause());
+                } catch (RuntimeException e) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+        }
+        
+        private void watchSkillFiles() {
+            try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+                Set<Path> directories = new HashSet<>(List.of(technicalSkills.getParent(), softSkills.getParent()));
+                for (Path directory : directories) {
+                    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+                while (running) {
+                    WatchKey key = watchService.take();
+                    boolean skillsChanged = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path) {
+                            Path changed = ((Path) key.watchable()).resolve((Path) event.context());
+                            skillsChanged |= changed.equals(technicalSkills) || changed.equals(softSkills);
+                        }
+                    }
+                    key.reset();
+                    if (skillsChanged) {
+                        // Editors save in several steps; let the burst settle before rebuilding
+                        Thread.sleep(RELOAD_DEBOUNCE_MILLIS);
+                        for (WatchKey more = watchService.poll(); more != null; more = watchService.poll()) {
+                            more.pollEvents();
+                            more.reset();
+                        }
+                        reload();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Shutting down
+            } catch (IOException e) {
+                System.err.println("Not watching skill files: " + e.getMessage());
+            }
+        }
+        
+        private static class RankRequest {
+            private final KnowledgeBase knowledgeBase;
+            private final ScoringPlan plan;
+            private final List<Resume> resumes;
+            private final CompletableFuture<List<RankedResume>> result = new CompletableFuture<>();
+            
+            RankRequest(KnowledgeBase knowledgeBase, ScoringPlan plan, List<Resume> resumes) {
+                this.knowledgeBase = knowledgeBase;
+                this.plan = plan;
+                this.resumes = resumes;
+            }
+        }
+    }
+    
+    // Deterministic synthetic resumes for benchmarks: lines sampled from the sample resumes mixed
+    // with generated lines where skillDensity is the fraction of words that are knowledge base skills.
+    // The same seed, samples and skill files always give the same corpus.
+    public static class CorpusGenerator {
+        private static final String[] FILLER = {
+            "worked", "on", "the", "team", "delivered", "systems", "with", "and", "for", "improved",
+            "design", "customers", "data", "platform", "services", "in", "of", "built", "led", "reliable"
+        };
+        
+        private final long seed;
+        private final int resumeSize;
+        private final double skillDensity;
+        private final List<String> sampleLines = new ArrayList<>();
+        private final List<String> skills = new ArrayList<>();
+        
+        // Sample lines come from the .txt files under samples when it is a directory; null for none
+        public CorpusGenerator(long seed, int resumeSize, double skillDensity, Path samples, SkillAutomaton automaton)
+                throws IOException {
+            this.seed = seed;
+            this.resumeSize = resumeSize;
+            this.skillDensity = skillDensity;
+            if (samples != null && Files.isDirectory(samples)) {
+                try (Stream<Path> paths = Files.walk(samples)) {
+                    for (Path path : paths.filter(p -> p.toString().endsWith(".txt")).sorted().collect(Collectors.toList())) {
+                        for (String line : Files.readAllLines(path)) {
+                            if (!line.isBlank()) {
+                                sampleLines.add(line.strip());
+                            }
+                        }
+                    }
+                }
+            }
+            for (int id = 0; id < automaton.getSkillCount(); id++) {
+                skills.add(automaton.getSkillName(id));
+            }
+        }
+        
+        public String generate(int index) {
+            Random random = new Random(seed * 1_000_003L + index);
+            StringBuilder text = new StringBuilder(resumeSize + 256);
+            text.append("Candidate ").append(index).append("\r\n");
+            text.append(random.nextInt(20)).append("+ years of experience\r\n");
+            while (text.length() < resumeSize) {
+                if (!sampleLines.isEmpty() && random.nextInt(3) == 0) {
+                    text.append(sampleLines.get(random.nextInt(sampleLines.size())));
+                } else {
+                    int words = 8 + random.nextInt(9);
+                    for (int w = 0; w < words; w++) {
+                        if (w > 0) {
+                            text.append(random.nextInt(6) == 0 ? ", " : " ");
+                        }
+                        text.append(!skills.isEmpty() && random.nextDouble() < skillDensity
+                            ? skills.get(random.nextInt(skills.size()))
+                            : FILLER[random.nextInt(FILLER.length)]);
+                    }
+                }
+                text.append("\r\n");
+            }
+            return text.toString();
+        }
+        
+        public void writeCorpus(Path directory, int count) throws IOException {
+            Files.createDirectories(directory);
+            for (int i = 0; i < count; i++) {
+                Files.writeString(directory.resolve(String.format("resume_%06d.txt", i)), generate(i));
+            }
+        }
+    }
+    
+    // In-process microbenchmarks: warmup and measured iterations of fixed duration, throughput with
+    // its spread across iterations, and allocation per operation for the single-threaded cases.
+    // Results go to a CSV that a later run can use as its baseline.
+    public static class BenchmarkSuite {
+        private static final int WARMUP_ITERATIONS = 3;
+        private static final int MEASURED_ITERATIONS = 5;
+        
+        // Consumes results so the JIT cannot drop the measured work
+        private static volatile long sink;
+        
+        public interface Operation {
+            // Processes one unit (document, compile, ...) and returns something derived from the result
+            long run(int index) throws Exception;
+        }
+        
+        private final long iterationMillis;
+        private final String filter;
+        private final List<BenchmarkResult> results = new ArrayList<>();
+        
+        public BenchmarkSuite(long iterationMillis, String filter) {
+            this.iterationMillis = iterationMillis;
+            this.filter = filter;
+        }
+        
+        // bytesPerUnit feeds the MB/s column; 0 when it does not apply
+        public void measure(String name, String unit, double bytesPerUnit, boolean trackAllocation, Operation operation)
+                throws Exception {
+            if (filter != null && !name.contains(filter)) {
+                return;
+            }
+            int index = 0;
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                index = runIteration(operation, index, null);
+            }
+            double[] throughput = new double[MEASURED_ITERATIONS];
+            long units = 0;
+            long allocatedBefore = trackAllocation ? allocatedBytes() : -1;
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                long[] iteration = new long[2];
+                index = runIteration(operation, index, iteration);
+                throughput[i] = iteration[0] * 1e9 / iteration[1];
+                units += iteration[0];
+            }
+            long allocated = trackAllocation && allocatedBefore >= 0 ? allocatedBytes() - allocatedBefore : -1;
+            
+            double mean = Arrays.stream(throughput).average().orElse(0);
+            double variance = Arrays.stream(throughput).map(t -> (t - mean) * (t - mean)).sum() / (MEASURED_ITERATIONS - 1);
+            BenchmarkResult result = new BenchmarkResult(name, unit, mean, 100 * Math.sqrt(variance) / mean,
+                allocated < 0 ? -1 : (double) allocated / units, bytesPerUnit * mean / (1 << 20));
+            results.add(result);
+            System.out.println(result.format());
+        }
+        
+        // Returns the next operation index; fills {units, nanos} when measuring
+        private int runIteration(Operation operation, int index, long[] iteration) throws Exception {
+            long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+            long start = System.nanoTime();
+            long units = 0;
+            long local = 0;
+            long now;
+            do {
+                local += operation.run(index++);
+                units++;
+                now = System.nanoTime();
+            } while (now < deadline);
+            sink += local;
+            if (iteration != null) {
+                iteration[0] = units;
+                iteration[1] = now - start;
+            }
+            return index;
+        }
+        
+        // Thread.getId() is deprecated from Java 19 for threadId(), which Java 11 does not have
+        @SuppressWarnings("deprecation")
+        private static long allocatedBytes() {
+            java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return -1;
+        }
+        
+        public void writeResults(Path file) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write("Benchmark,Unit,Ops/s,Error %,ns/op,B/op,MB/s");
+                writer.newLine();
+                for (BenchmarkResult result : results) {
+                    writer.write(String.format(Locale.ROOT, "%s,%s,%.2f,%.2f,%.1f,%.1f,%.2f", result.name, result.unit,
+                        result.opsPerSecond, result.errorPercent, 1e9 / result.opsPerSecond,
+                        result.bytesPerOp, result.megabytesPerSecond));
+                    writer.newLine();
+                }
+            }
+        }
+        
+        // A change counts as noise while it is within the two runs' combined spread
+        public void compareWithBaseline(Path file) throws IOException {
+            Map<String, double[]> baseline = new HashMap<>();
+            List<String> lines = Files.readAllLines(file);
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(",");
+                baseline.put(fields[0], new double[] { Double.parseDouble(fields[2]), Double.parseDouble(fields[3]) });
+            }
+            System.out.println();
+            System.out.println("Compared with " + file + ":");
+            for (BenchmarkResult result : results) {
+                double[] before = baseline.get(result.name);
+                if (before == null) {
+                    System.out.printf("  %-28s (not in baseline)%n", result.name);
+                    continue;
+                }
+                double change = 100 * (result.opsPerSecond - before[0]) / before[0];
+                boolean noise = Math.abs(change) <= before[1] + result.errorPercent;
+                System.out.printf(Locale.ROOT, "  %-28s %12.1f -> %12.1f %s/s  %+6.1f%%%s%n", result.name, before[0],
+                    result.opsPerSecond, result.unit, change, noise ? "  (within noise)" : "");
+            }
+        }
+        
+        static void consume(long value) {
+            sink += value;
+        }
+    }
+    
+    public static class BenchmarkResult {
+        private final String name;
+        private final String unit;
+        private final double opsPerSecond;
+        private final double errorPercent;
+        private final double bytesPerOp;          // -1 when not measured
+        private final double megabytesPerSecond;
+        
+        BenchmarkResult(String name, String unit, double opsPerSecond, double errorPercent,
+                        double bytesPerOp, double megabytesPerSecond) {
+            this.name = name;
+            this.unit = unit;
+            this.opsPerSecond = opsPerSecond;
+            this.errorPercent = errorPercent;
+            this.bytesPerOp = bytesPerOp;
+            this.megabytesPerSecond = megabytesPerSecond;
+        }
+        
+        String format() {
+            return String.format(Locale.ROOT, "%-28s %12.1f %s/s +-%5.1f%%  %10.1f ns/op  %12s  %8s",
+                name, opsPerSecond, unit, errorPercent, 1e9 / opsPerSecond,
+                bytesPerOp < 0 ? "-" : String.format(Locale.ROOT, "%.0f B/op", bytesPerOp),
+                megabytesPerSecond > 0 ? String.format(Locale.ROOT, "%.1f MB/s", megabytesPerSecond) : "");
+        }
+    }
+    
+    // Per-stage latency histograms and run counters, safe for concurrent recording. Every recorded
+    // stage is also a JFR event when a recording is active (-XX:StartFlightRecording).
+    public static class RunMetrics {
+        public static final String WALK = "walk";
+        public static final String READ = "read";
+        public static final String EXTRACT = "extract";
+        public static final String SCORE = "score";
+        public static final String ANALYSIS = "analysis";
+        public static final String OUTPUT = "output";
+        private static final int SLOWEST_KEPT = 10;
+        
+        private final long startNanos = System.nanoTime();
+        private final Map<String, LatencyHistogram> stages = new LinkedHashMap<>();
+        private final LatencyHistogram queueDepths = new LatencyHistogram();
+        private final AtomicLong resumes = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        // Fastest of the kept outliers on top
+        private final PriorityQueue<SlowResume> slowest = new PriorityQueue<>(Comparator.comparingLong(r -> r.nanos));
+        
+        public RunMetrics() {
+            // Filled once, read-only afterwards
+            for (String stage : List.of(WALK, READ, EXTRACT, SCORE, ANALYSIS, OUTPUT)) {
+                stages.put(stage, new LatencyHistogram());
+            }
+        }
+        
+        // Records the time since startNanos; bytes counts towards throughput (read stage only)
+        public long record(String stage, String resume, long byteCount, long startNanos) {
+            long elapsed = System.nanoTime() - startNanos;
+            stages.get(stage).record(elapsed);
+            if (byteCount > 0) {
+                bytes.addAndGet(byteCount);
+            }
+            StageEvent event = new StageEvent();
+            if (event.isEnabled()) {
+                event.stage = stage;
+                event.resume = resume;
+                event.bytes = byteCount;
+                event.elapsed = elapsed;
+                event.commit();
+            }
+            return elapsed;
+        }
+        
+        // One resume through extraction and scoring
+        public void recordResume(String resume, long nanos) {
+            resumes.incrementAndGet();
+            synchronized (slowest) {
+                if (slowest.size() < SLOWEST_KEPT || nanos > slowest.peek().nanos) {
+                    slowest.add(new SlowResume(resume, nanos));
+                    if (slowest.size() > SLOWEST_KEPT) {
+                        slowest.poll();
+                    }
+                }
+            }
+        }
+        
+        public void recordQueueDepth(int depth) {
+            queueDepths.record(depth);
+        }
+        
+        public void recordFailure() {
+            failures.incrementAndGet();
+        }
+        
+        public void commitSummaryEvent() {
+            RunSummaryEvent event = new RunSummaryEvent();
+            if (event.isEnabled()) {
+                double seconds = wallSeconds();
+                event.resumes = resumes.get();
+                event.failures = failures.get();
+                event.bytes = bytes.get();
+                event.resumesPerSecond = resumes.get() / seconds;
+                event.bytesPerSecond = bytes.get() / seconds;
+                event.commit();
+            }
+        }
+        
+        public String format() {
+            double seconds = wallSeconds();
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.ROOT, "Run metrics: %d resumes in %.2f s (%.1f resumes/s, %.2f MB/s read), %d failed%n",
+                resumes.get(), seconds, resumes.get() / seconds, bytes.get() / seconds / (1 << 20), failures.get()));
+            out.append(String.format("%-10s %8s %10s %9s %9s %9s %9s%n", "Stage", "Count", "Total ms", "Mean us", "p50 us", "p99 us", "Max us"));
+            for (Map.Entry<String, LatencyHistogram> stage : stages.entrySet()) {
+                LatencyHistogram h = stage.getValue();
+                if (h.count() > 0) {
+                    out.append(String.format(Locale.ROOT, "%-10s %8d %10.1f %9.1f %9.1f %9.1f %9.1f%n", stage.getKey(), h.count(),
+                        h.total() / 1e6, h.mean() / 1e3, h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3, h.max() / 1e3));
+                }
+            }
+            if (queueDepths.count() > 0) {
+                out.append(String.format(Locale.ROOT, "Handoff queue: mean depth %.1f, max %d%n", queueDepths.mean(), queueDepths.max()));
+            }
+            List<SlowResume> outliers = getSlowest();
+            if (!outliers.isEmpty()) {
+                out.append("Slowest resumes:");
+                for (SlowResume outlier : outliers) {
+                    out.append(String.format(Locale.ROOT, " %s (%.1f ms)", outlier.resume, outlier.nanos / 1e6));
+                }
+                out.append(System.lineSeparator());
+            }
+            return out.toString();
+        }
+        
+        public String toJson() {
+            double seconds = wallSeconds();
+            StringBuilder json = new StringBuilder("{\n");
+            json.append(String.format(Locale.ROOT, "  \"wallSeconds\": %.3f,%n", seconds));
+            json.append(String.format(Locale.ROOT, "  \"resumes\": %d,%n  \"failures\": %d,%n  \"bytesRead\": %d,%n",
+                resumes.get(), failures.get(), bytes.get()));
+            json.append(String.format(Locale.ROOT, "  \"resumesPerSecond\": %.2f,%n  \"bytesPerSecond\": %.2f,%n",
+                resumes.get() / seconds, bytes.get() / seconds));
+            json.append("  \"stages\": {");
+            String separator = "\n";
+            for (Map.Entry<String, LatencyHistogram> stage : stages.entrySet()) {
+                LatencyHistogram h = stage.getValue();
+                json.append(separator).append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"count\": %d, \"totalNanos\": %d, \"meanNanos\": %.1f, \"p50Nanos\": %d, \"p90Nanos\": %d, \"p99Nanos\": %d, \"maxNanos\": %d}",
+                    stage.getKey(), h.count(), h.total(), h.mean(), h.percentile(0.5), h.percentile(0.9), h.percentile(0.99), h.max()));
+                separator = ",\n";
+            }
+            json.append("\n  },\n");
+            json.append(String.format(Locale.ROOT, "  \"handoffQueue\": {\"samples\": %d, \"meanDepth\": %.2f, \"p99Depth\": %d, \"maxDepth\": %d},%n",
+                queueDepths.count(), queueDepths.mean(), queueDepths.percentile(0.99), queueDepths.max()));
+            json.append("  \"slowest\": [");
+            separator = "\n";
+            for (SlowResume outlier : getSlowest()) {
+                json.append(separator).append(String.format("    {\"resume\": %s, \"nanos\": %d}", jsonString(outlier.resume), outlier.nanos));
+                separator = ",\n";
+            }
+            json.append("\n  ]\n}\n");
+            return json.toString();
+        }
+        
+        // Slowest first
+        public List<SlowResume> getSlowest() {
+            List<SlowResume> outliers;
+            synchronized (slowest) {
+                outliers = new ArrayList<>(slowest);
+            }
+            outliers.sort(Comparator.comparingLong((SlowResume r) -> r.nanos).reversed());
+            return outliers;
+        }
+        
+        private double wallSeconds() {
+            return Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        }
+        
+        private static String jsonString(String value) {
+            StringBuilder quoted = new StringBuilder("\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    quoted.append('\\').append(c);
+                } else if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+        
+        public static class SlowResume {
+            private final String resume;
+            private final long nanos;
+            
+            SlowResume(String resume, long nanos) {
+                this.resume = resume;
+                this.nanos = nanos;
+            }
+            
+            public String getResume() { return resume; }
+            public long getNanos() { return nanos; }
+        }
+    }
+    
+    // Log-linear buckets: four per power of two, so a reported percentile is the upper edge of its
+    // bucket and at most 25% above the true value. Count, total and max are exact.
+    public static class LatencyHistogram {
+        private static final int BUCKETS = 4 + 61 * 4;
+        
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        
+        public void record(long value) {
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(bucket(value));
+            count.incrementAndGet();
+            total.addAndGet(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+        
+        public long count() { return count.get(); }
+        public long total() { return total.get(); }
+        public long max() { return max.get(); }
+        
+        public double mean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) total.get() / n;
+        }
+        
+        public long percentile(double quantile) {
+            long target = (long) Math.ceil(quantile * count.get());
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target && seen > 0) {
+                    return Math.min(upperEdge(i), max.get());
+                }
+            }
+            return max.get();
+        }
+        
+        private static int bucket(long value) {
+            if (value < 4) {
+                return (int) value;
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(value);
+            return 4 + (msb - 2) * 4 + (int) ((value >>> (msb - 2)) & 3);
+        }
+        
+        private static long upperEdge(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int shift = (bucket - 4) / 4;
+            int sub = (bucket - 4) % 4;
+            return ((5L + sub) << shift) - 1;
+        }
+    }
+    
+    @Name("resumeshortlister.Stage")
+    @Label("Resume Stage")
+    @Category("Resume Shortlister")
+    @Description("One pipeline stage (walk, read, extract, score, analysis, output) for one resume")
+    @StackTrace(false)
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+        @Label("Resume")
+        String resume;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+    
+    @Name("resumeshortlister.RunSummary")
+    @Label("Run Summary")
+    @Category("Resume Shortlister")
+    @StackTrace(false)
+    static class RunSummaryEvent extends Event {
+        @Label("Resumes")
+        long resumes;
+        @Label("Failures")
+        long failures;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+        @Label("Resumes per Second")
+        double resumesPerSecond;
+        @Label("Bytes per Second")
+        @DataAmount(DataAmount.BYTES)
+        double bytesPerSecond;
+    }
+    
+    // Data classes
+    public static class Resume {
+        private final String name;
+        private final String content;   // null until needed for resumes ingested as bytes
+        private final Path source;
+        private final long size;        // characters, or bytes for resumes ingested as bytes
+        
+        public Resume(String name, String content) {
+            this(name, content, null);
+        }
+        
+        public Resume(String name, String content, Path source) {
+            this.name = name;
+            this.content = content;
+            this.source = source;
+            this.size = content.length();
+        }
+        
+        // Byte ingestion: the file is read by the extractor and not kept on the heap
+        public Resume(String name, Path source, long size) {
+            this.name = name;
+            this.content = null;
+            this.source = source;
+            this.size = size;
+        }
+        
+        public String getName() { return name; }
+        public Path getSource() { return source; }
+        public long getSize() { return size; }
+        public boolean isLoaded() { return content != null; }
+        
+        public String getContent() {
+            if (content != null) {
+                return content;
+            }
+            try {
+                return Files.readString(source);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        // Text that skill hit offsets refer to: UTF-8 byte offsets for byte-ingested resumes
+        public CharSequence getText() {
+            if (content != null) {
+                return content;
+            }
+            try {
+                return new Utf8Text(ByteBuffer.wrap(Files.readAllBytes(source)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    public static class RankedResume {
+        private final Resume resume;
+        private final ResumeFeatures features;
+        private final double score;
+        private final ScoringPlan plan;
+        
+        public RankedResume(Resume resume, ResumeFeatures features, double score, ScoringPlan plan) {
+            this.resume = resume;
+            this.features = features;
+            this.score = score;
+            this.plan = plan;
+        }
+        
+        public Resume getResume() { return resume; }
+        public ResumeFeatures getFeatures() { return features; }
+        public double getScore() { return score; }
+        public ScoringPlan getPlan() { return plan; }
+        
+        // Only the detailed view needs it, so it is not built per resume and job
+        public String getAnalysis() { return generateAnalysis(features, plan); }
+    }
+    
+    // One CSV row of the ranking, without the resume text
+    public static class RankingEntry {
+        static final Comparator<RankingEntry> ORDER =
+            Comparator.comparingDouble(RankingEntry::getScore).reversed()
+                      .thenComparing(RankingEntry::getName);
+        
+        private final String name;
+        private final double score;
+        private final String topSkills;
+        private final int yearsExperience;
+        private final String education;
+        
+        public RankingEntry(String name, double score, String topSkills, int yearsExperience, String education) {
+            this.name = name;
+            this.score = score;
+            this.topSkills = topSkills;
+            this.yearsExperience = yearsExperience;
+            this.education = education;
+        }
+        
+        public static RankingEntry of(RankedResume rr) {
+            String topSkills = Arrays.stream(rr.getFeatures().getTopSkillIds(5))
+                               .mapToObj(rr.getPlan().getAutomaton()::getSkillName)
+                               .collect(Collectors.joining(";"));
+            String education = String.join(";", rr.getFeatures().getEducation());
+            return new RankingEntry(rr.getResume().getName(), rr.getScore(), topSkills,
+                                    rr.getFeatures().getYearsExperience(), education);
+        }
+        
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeUTF(name);
+            out.writeDouble(score);
+            out.writeUTF(topSkills);
+            out.writeInt(yearsExperience);
+            out.writeUTF(education);
+        }
+        
+        public static RankingEntry readFrom(DataInput in) throws IOException {
+            return new RankingEntry(in.readUTF(), in.readDouble(), in.readUTF(), in.readInt(), in.readUTF());
+        }
+        
+        public String getName() { return name; }
+        public double getScore() { return score; }
+        public String getTopSkills() { return topSkills; }
+        public int getYearsExperience() { return yearsExperience; }
+        public String getEducation() { return education; }
+    }
+    
+    // Streaming ranking output: rows are written as they come, so rankings of any length take
+    // constant memory. csv quotes fields as RFC 4180 requires, jsonl writes one object per line
+    // and binary writes a RankingFile that can be read a page at a time.
+    public abstract static class RankingWriter implements Closeable, Flushable {
+        static final List<String> FORMATS = List.of("csv", "jsonl", "binary");
+        
+        // With jobColumn, every row carries the job passed to write()
+        public static RankingWriter open(Path file, String format, boolean jobColumn) throws IOException {
+            switch (format) {
+                case "csv":
+                    return new CsvRankingWriter(Files.newBufferedWriter(file), jobColumn);
+                case "jsonl":
+                    return new JsonlRankingWriter(Files.newBufferedWriter(file));
+                case "binary":
+                    if (jobColumn) {
+                        throw new IllegalArgumentException("A binary ranking holds a single job");
+                    }
+                    return new BinaryRankingWriter(file);
+                default:
+                    throw new IllegalArgumentException("Unknown output format: " + format);
+            }
+        }
         
-        // Calculate score
-        double score = calculateScore(features);
+        static String extension(String format) {
+            return format.equals("binary") ? ".rsrk" : "." + format;
+        }
+        
+        public abstract void write(String job, int rank, RankingEntry entry) throws IOException;
         
-        // Create detailed analysis
-        String analysis = generateAnalysis(features);
+        // Ranks start at 1 for every call
+        public void writeAll(String job, Iterator<RankingEntry> ranking) throws IOException {
+            for (int rank = 1; ranking.hasNext(); rank++) {
+                write(job, rank, ranking.next());
+            }
+        }
         
-        return new RankedResume(resume, features, score, analysis);
+        // Same digits as %.2f (half-up on the shortest decimal form), without a Formatter or the default locale
+        static String formatScore(double score) {
+            return BigDecimal.valueOf(score).setScale(2, RoundingMode.HALF_UP).toPlainString();
+        }
     }
     
-    private ResumeFeatures extractFeatures(Resume resume) {
-        String content = resume.getContent();
+    public static class CsvRankingWriter extends RankingWriter {
+        private final BufferedWriter out;
+        private final boolean jobColumn;
         
-        // Extract skills with context
-        Map<String, List<String>> skillContexts = new HashMap<>();
-        Matcher skillMatcher = SKILL_PATTERN.matcher(content);
-        while (skillMatcher.find()) {
-            String skill = skillMatcher.group(1);
-            String context = extractContext(content, skillMatcher.start(), 50);
-            skillContexts.computeIfAbsent(skill, k -> new ArrayList<>()).add(context);
+        public CsvRankingWriter(BufferedWriter out, boolean jobColumn) throws IOException {
+            this.out = out;
+            this.jobColumn = jobColumn;
+            out.write(jobColumn ? "Job,Rank,Name,Score,Top Skills,Experience,Education"
+                                : "Rank,Name,Score,Top Skills,Experience,Education");
+            out.newLine();
         }
         
-        // Extract experience
-        int yearsExperience = 0;
-        Matcher expMatcher = EXPERIENCE_PATTERN.matcher(content);
-        if (expMatcher.find()) {
-            yearsExperience = Integer.parseInt(expMatcher.group(1));
+        @Override
+        public void write(String job, int rank, RankingEntry entry) throws IOException {
+            if (jobColumn) {
+                writeField(job);
+                out.write(',');
+            }
+            out.write(Integer.toString(rank));
+            out.write(',');
+            writeField(entry.getName());
+            out.write(',');
+            out.write(formatScore(entry.getScore()));
+            out.write(',');
+            writeField(entry.getTopSkills());
+            out.write(',');
+            out.write(Integer.toString(entry.getYearsExperience()));
+            out.write(',');
+            writeField(entry.getEducation());
+            out.newLine();
         }
         
-        // Extract education
-        List<String> education = new ArrayList<>();
-        Matcher eduMatcher = EDUCATION_PATTERN.matcher(content);
-        while (eduMatcher.find()) {
-            education.add(eduMatcher.group());
+        // Quoted only when it holds a comma, quote or line break; quotes are doubled
+        private void writeField(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
         }
         
-        // Extract certifications
-        List<String> certifications = new ArrayList<>();
-        Matcher certMatcher = CERTIFICATION_PATTERN.matcher(content);
-        while (certMatcher.find()) {
-            certifications.add(certMatcher.group());
+        @Override
+        public void flush() throws IOException {
+            out.flush();
         }
         
-        // Extract projects
-        List<String> projects = new ArrayList<>();
-        Matcher projectMatcher = PROJECT_PATTERN.matcher(content);
-        while (projectMatcher.find()) {
-            projects.add(projectMatcher.group(1));
+        @Override
+        public void close() throws IOException {
+            out.close();
         }
-        
-        return new ResumeFeatures(
-            skillContexts,
-            yearsExperience,
-            education,
-            certifications,
-            projects
-        );
     }
     
-    private double calculateScore(ResumeFeatures features) {
-        double score = 0;
+    // {"rank":1,"name":...,"score":96.55,"topSkills":[...],"experience":0,"education":[...]}, plus "job" first
+    // when one is given
+    public static class JsonlRankingWriter extends RankingWriter {
+        private final BufferedWriter out;
         
-        // Skill matching (weighted by job requirements)
-        for (Map.Entry<String, Integer> req : currentJobRequirements.getSkillWeights().entrySet()) {
-            String requiredSkill = req.getKey();
-            int weight = req.getValue();
-            
-            if (features.getSkillContexts().containsKey(requiredSkill)) {
-                int mentions = Math.min(features.getSkillContexts().get(requiredSkill).size(), MAX_SKILL_MENTIONS);
-                score += mentions * weight * SKILL_WEIGHT;
-            }
+        public JsonlRankingWriter(BufferedWriter out) {
+            this.out = out;
         }
         
-        // Experience scoring
-        int relevantExperience = Math.min(features.getYearsExperience(), MAX_EXPERIENCE_YEARS);
-        score += relevantExperience * currentJobRequirements.getExperienceWeight() * EXPERIENCE_WEIGHT;
-        
-        // Education scoring
-        for (String degree : features.getEducation()) {
-            if (currentJobRequirements.getPreferredDegrees().stream().anyMatch(degree::contains)) {
-                score += EDUCATION_WEIGHT * currentJobRequirements.getEducationWeight();
+        @Override
+        public void write(String job, int rank, RankingEntry entry) throws IOException {
+            out.write('{');
+            if (job != null) {
+                out.write("\"job\":");
+                writeString(job);
+                out.write(',');
             }
+            out.write("\"rank\":");
+            out.write(Integer.toString(rank));
+            out.write(",\"name\":");
+            writeString(entry.getName());
+            out.write(",\"score\":");
+            out.write(formatScore(entry.getScore()));
+            out.write(",\"topSkills\":");
+            writeList(entry.getTopSkills());
+            out.write(",\"experience\":");
+            out.write(Integer.toString(entry.getYearsExperience()));
+            out.write(",\"education\":");
+            writeList(entry.getEducation());
+            out.write("}\n");
         }
         
-        // Certification bonus
-        for (String cert : features.getCertifications()) {
-            if (currentJobRequirements.getPreferredCertifications().contains(cert)) {
-                score += currentJobRequirements.getCertificationWeight();
+        // The entry keeps lists joined with ';'
+        private void writeList(String joined) throws IOException {
+            out.write('[');
+            if (!joined.isEmpty()) {
+                String separator = "";
+                for (String item : joined.split(";", -1)) {
+                    out.write(separator);
+                    writeString(item);
+                    separator = ",";
+                }
             }
+            out.write(']');
         }
         
-        // Project relevance
-        for (String project : features.getProjects()) {
-            if (containsAnyKeyword(project, currentJobRequirements.getKeywords())) {
-                score += currentJobRequirements.getProjectWeight();
+        private void writeString(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\' || c < 0x20) {
+                    out.write(RunMetrics.jsonString(value));
+                    return;
+                }
             }
+            out.write('"');
+            out.write(value);
+            out.write('"');
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            out.flush();
         }
         
-        return score;
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
     }
     
-    private String generateAnalysis(ResumeFeatures features) {
-        StringBuilder analysis = new StringBuilder();
+    // Binary ranking, big-endian: "RSRK" and a version; the entries in rank order (name, score,
+    // top skills, years, education; strings as a varint byte count and UTF-8, years as a varint);
+    // an index with the page size, the entry count and the offset of every page; then the index
+    // offset and "RSRK" again. Ranks are implicit, so only sequential ranks from 1 can be written.
+    public static class BinaryRankingWriter extends RankingWriter {
+        private final DataOutputStream out;
+        private long position;
+        private long count;
+        private long[] pageOffsets = new long[16];
+        private int pages;
         
-        // Skills analysis
-        analysis.append("Skills Matching:\n");
-        for (String reqSkill : currentJobRequirements.getSkillWeights().keySet()) {
-            if (features.getSkillContexts().containsKey(reqSkill)) {
-                int count = features.getSkillContexts().get(reqSkill).size();
-                analysis.append(String.format("- %s: %d mentions\n", reqSkill, count));
+        public BinaryRankingWriter(Path file) throws IOException {
+            OutputStream buffered = new BufferedOutputStream(Files.newOutputStream(file));
+            this.out = new DataOutputStream(new FilterOutputStream(buffered) {
+                @Override
+                public void write(int b) throws IOException {
+                    buffered.write(b);
+                    position++;
+                }
+                
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    buffered.write(b, off, len);
+                    position += len;
+                }
+            });
+            out.writeInt(RankingFile.MAGIC);
+            out.writeInt(RankingFile.VERSION);
+        }
+        
+        @Override
+        public void write(String job, int rank, RankingEntry entry) throws IOException {
+            if (rank != count + 1) {
+                throw new IllegalArgumentException("Binary rankings are written in rank order from 1");
             }
+            if (count % RankingFile.PAGE_SIZE == 0) {
+                if (pages == pageOffsets.length) {
+                    pageOffsets = Arrays.copyOf(pageOffsets, pages * 2);
+                }
+                pageOffsets[pages++] = position;
+            }
+            writeString(entry.getName());
+            out.writeDouble(entry.getScore());
+            writeString(entry.getTopSkills());
+            writeVarint(entry.getYearsExperience());
+            writeString(entry.getEducation());
+            count++;
         }
         
-        // Experience analysis
-        analysis.append(String.format("\nExperience: %d years\n", features.getYearsExperience()));
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            out.write(bytes);
+        }
         
-        // Education analysis
-        if (!features.getEducation().isEmpty()) {
-            analysis.append("\nEducation:\n");
-            features.getEducation().forEach(edu -> analysis.append("- ").append(edu).append("\n"));
+        // 7 bits per byte, low bits first; the high bit marks a following byte
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
         }
         
-        // Certifications analysis
-        if (!features.getCertifications().isEmpty()) {
-            analysis.append("\nCertifications:\n");
-            features.getCertifications().forEach(cert -> analysis.append("- ").append(cert).append("\n"));
+        @Override
+        public void flush() throws IOException {
+            out.flush();
         }
         
-        return analysis.toString();
-    }
-    
-    // Helper methods
-    private String extractContext(String text, int position, int windowSize) {
-        int start = Math.max(0, position - windowSize);
-        int end = Math.min(text.length(), position + windowSize);
-        return text.substring(start, end).replaceAll("\\s+", " ").trim();
-    }
-    
-    private boolean containsAnyKeyword(String text, Set<String> keywords) {
-        return keywords.stream().anyMatch(keyword -> 
-            Pattern.compile("\\b" + Pattern.quote(keyword) + "\\b", Pattern.CASE_INSENSITIVE)
-                   .matcher(text).find());
-    }
-    
-    private static Pattern buildSkillPattern() {
-        String technical = String.join("|", TECHNICAL_SKILLS);
-        String soft = String.join("|", SOFT_SKILLS);
-        return Pattern.compile("\\b(" + technical + "|" + soft + ")\\b", Pattern.CASE_INSENSITIVE);
-    }
-    
-    private static Pattern buildEducationPattern() {
-        String degrees = String.join("|", DEGREE_TYPES);
-        return Pattern.compile(
-            "(" + degrees + ")[\\s\\w]*?(in|of)?[\\s\\w]*?\\b(Computer Science|Engineering|IT|Information Technology)\\b",
-            Pattern.CASE_INSENSITIVE
-        );
-    }
-    
-    private static Pattern buildCertificationPattern() {
-        String certs = String.join("|", TECH_CERTIFICATIONS);
-        return Pattern.compile("\\b(" + certs + ")[\\w\\s]*?\\b", Pattern.CASE_INSENSITIVE);
-    }
-    
-    private static Set<String> loadSkills(String filename) {
-        try {
-            return Files.lines(Paths.get(filename))
-                      .map(String::trim)
-                      .filter(line -> !line.isEmpty())
-                      .collect(Collectors.toSet());
-        } catch (IOException e) {
-            System.err.println("Warning: Could not load skills file " + filename + ", using defaults");
-            return Collections.emptySet();
+        @Override
+        public void close() throws IOException {
+            try {
+                long indexOffset = position;
+                out.writeInt(RankingFile.PAGE_SIZE);
+                out.writeLong(count);
+                out.writeInt(pages);
+                for (int p = 0; p < pages; p++) {
+                    out.writeLong(pageOffsets[p]);
+                }
+                out.writeLong(indexOffset);
+                out.writeInt(RankingFile.MAGIC);
+            } finally {
+                out.close();
+            }
         }
     }
     
-    // Data classes
-    public static class Resume {
-        private final String name;
-        private final String content;
+    // Reads a binary ranking one page at a time; only the page index is held in memory
+    public static class RankingFile implements Closeable {
+        static final int MAGIC = 0x5253524B;   // "RSRK"
+        static final int VERSION = 1;
+        static final int PAGE_SIZE = 1024;
+        private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
         
-        public Resume(String name, String content) {
-            this.name = name;
-            this.content = content;
+        private final FileChannel channel;
+        private final int pageSize;
+        private final long count;
+        private final long[] pageOffsets;
+        
+        public RankingFile(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < 2 * Integer.BYTES + TRAILER_BYTES
+                        || readAt(0, Integer.BYTES).getInt() != MAGIC
+                        || readAt(size - Integer.BYTES, Integer.BYTES).getInt() != MAGIC) {
+                    throw new IOException("Not a binary ranking: " + file);
+                }
+                int version = readAt(Integer.BYTES, Integer.BYTES).getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported binary ranking version " + version + ": " + file);
+                }
+                long indexOffset = readAt(size - TRAILER_BYTES, Long.BYTES).getLong();
+                if (indexOffset < 2 * Integer.BYTES || indexOffset > size - TRAILER_BYTES) {
+                    throw new IOException("Corrupt binary ranking: " + file);
+                }
+                ByteBuffer index = readAt(indexOffset, (int) Math.min(Integer.MAX_VALUE, size - TRAILER_BYTES - indexOffset));
+                pageSize = index.getInt();
+                count = index.getLong();
+                pageOffsets = new long[index.getInt()];
+                index.asLongBuffer().get(pageOffsets);
+                if (pageSize < 1 || pageOffsets.length != (count + pageSize - 1) / pageSize) {
+                    throw new IOException("Corrupt binary ranking: " + file);
+                }
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                channel.close();
+                throw new IOException("Corrupt binary ranking: " + file, e);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
         }
         
-        public String getName() { return name; }
-        public String getContent() { return content; }
-    }
-    
-    public static class RankedResume {
-        private final Resume resume;
-        private final ResumeFeatures features;
-        private final double score;
-        private final String analysis;
+        private ByteBuffer readAt(long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            return buffer.flip();
+        }
         
-        public RankedResume(Resume resume, ResumeFeatures features, double score, String analysis) {
-            this.resume = resume;
-            this.features = features;
-            this.score = score;
-            this.analysis = analysis;
+        public long size() { return count; }
+        public int getPageSize() { return pageSize; }
+        public int getPageCount() { return pageOffsets.length; }
+        
+        // Entries of ranks page * pageSize + 1 onwards
+        public List<RankingEntry> readPage(int page) throws IOException {
+            int entries = (int) Math.min(pageSize, count - (long) page * pageSize);
+            List<RankingEntry> result = new ArrayList<>(entries);
+            channel.position(pageOffsets[page]);
+            // Not closed: that would close the channel
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            for (int i = 0; i < entries; i++) {
+                String name = readString(in);
+                double score = in.readDouble();
+                String topSkills = readString(in);
+                int yearsExperience = readVarint(in);
+                result.add(new RankingEntry(name, score, topSkills, yearsExperience, readString(in)));
+            }
+            return result;
         }
         
-        public Resume getResume() { return resume; }
-        public ResumeFeatures getFeatures() { return features; }
-        public double getScore() { return score; }
-        public String getAnalysis() { return analysis; }
+        private static String readString(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[readVarint(in)];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        private static int readVarint(DataInputStream in) throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt binary ranking: varint too long");
+        }
+        
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
     }
     
     public static class ResumeFeatures {
-        private final Map<String, List<String>> skillContexts;
+        private final int[] skillIds;       // ascending
+        private final int[] skillCounts;    // mentions per entry of skillIds
+        private final int[] hitPositions;   // hit offsets grouped by skill, in skillIds order
         private final int yearsExperience;
         private final List<String> education;
         private final List<String> certifications;
         private final List<String> projects;
         
-        public ResumeFeatures(Map<String, List<String>> skillContexts, int yearsExperience,
-                            List<String> education, List<String> certifications,
+        public ResumeFeatures(int[] skillIds, int[] skillCounts, int[] hitPositions,
+                            int yearsExperience, List<String> education, List<String> certifications,
                             List<String> projects) {
-            this.skillContexts = skillContexts;
+            this.skillIds = skillIds;
+            this.skillCounts = skillCounts;
+            this.hitPositions = hitPositions;
             this.yearsExperience = yearsExperience;
             this.education = education;
             this.certifications = certifications;
             this.projects = projects;
         }
         
-        public Map<String, List<String>> getSkillContexts() { return skillContexts; }
+        public int[] getSkillIds() { return skillIds; }
+        public int[] getSkillCounts() { return skillCounts; }
+        public int[] getHitPositions() { return hitPositions; }
+        
+        public int getSkillCount(int skillId) {
+            int index = Arrays.binarySearch(skillIds, skillId);
+            return index < 0 ? 0 : skillCounts[index];
+        }
+        
+        // Most mentioned skills first, ties by first mention
+        public int[] getTopSkillIds(int limit) {
+            int[] firstHit = new int[skillIds.length];
+            for (int i = 1; i < skillIds.length; i++) {
+                firstHit[i] = firstHit[i - 1] + skillCounts[i - 1];
+            }
+            return IntStream.range(0, skillIds.length)
+                .boxed()
+                .sorted(Comparator.comparingInt((Integer i) -> -skillCounts[i])
+                                  .thenComparingInt(i -> hitPositions[firstHit[i]]))
+                .limit(limit)
+                .mapToInt(i -> skillIds[i])
+                .toArray();
+        }
+        
+        // Builds snippet text on demand from the stored offsets
+        public List<String> getSkillContexts(int skillId, CharSequence content, int limit) {
+            int index = Arrays.binarySearch(skillIds, skillId);
+            if (index < 0) {
+                return Collections.emptyList();
+            }
+            int first = 0;
+            for (int i = 0; i < index; i++) {
+                first += skillCounts[i];
+            }
+            List<String> contexts = new ArrayList<>();
+            for (int h = first; h < first + Math.min(skillCounts[index], limit); h++) {
+                contexts.add(extractContext(content, hitPositions[h], 50));
+            }
+            return contexts;
+        }
+        
         public int getYearsExperience() { return yearsExperience; }
         public List<String> getEducation() { return education; }
         public List<String> getCertifications() { return certifications; }
         public List<String> getProjects() { return projects; }
+
+        // Collects extraction events in document order
+        public static class Builder {
+            private long[] skillHits = new long[16];   // skill id (high 32 bits) | offset
+            private int skillHitCount;
+            private int yearsExperience;
+            private final List<String> education = new ArrayList<>();
+            private final List<String> certifications = new ArrayList<>();
+            private final List<String> projects = new ArrayList<>();
+
+            public Builder addSkillHit(int skillId, int position) {
+                if (skillHitCount == skillHits.length) {
+                    skillHits = Arrays.copyOf(skillHits, skillHitCount * 2);
+                }
+                skillHits[skillHitCount++] = ((long) skillId << 32) | position;
+                return this;
+            }
+
+            public Builder setYearsExperience(int yearsExperience) {
+                this.yearsExperience = yearsExperience;
+                return this;
+            }
+
+            public Builder addEducation(String degree) {
+                education.add(degree);
+                return this;
+            }
+
+            public Builder addCertification(String certification) {
+                certifications.add(certification);
+                return this;
+            }
+
+            public Builder addProject(String project) {
+                projects.add(project);
+                return this;
+            }
+
+            // Education, certifications and projects only; skill hits and experience are merged by the caller
+            public Builder addAll(Builder other) {
+                education.addAll(other.education);
+                certifications.addAll(other.certifications);
+                projects.addAll(other.projects);
+                return this;
+            }
+
+            public ResumeFeatures build() {
+                // Sort by (skill, offset), then run-length encode the skill ids
+                Arrays.sort(skillHits, 0, skillHitCount);
+                int distinct = 0;
+                for (int i = 0; i < skillHitCount; i++) {
+                    if (i == 0 || (skillHits[i] >>> 32) != (skillHits[i - 1] >>> 32)) {
+                        distinct++;
+                    }
+                }
+                int[] ids = new int[distinct];
+                int[] counts = new int[distinct];
+                int[] positions = new int[skillHitCount];
+                int d = -1;
+                for (int i = 0; i < skillHitCount; i++) {
+                    if (i == 0 || (skillHits[i] >>> 32) != (skillHits[i - 1] >>> 32)) {
+                        ids[++d] = (int) (skillHits[i] >>> 32);
+                    }
+                    counts[d]++;
+                    positions[i] = (int) skillHits[i];
+                }
+                return new ResumeFeatures(ids, counts, positions, yearsExperience, education, certifications, projects);
+            }
+        }
     }
-    
+
     public static class JobRequirements {
         private Map<String, Integer> skillWeights;
         private Set<String> preferredDegrees;
@@ -371,10 +5605,145 @@ public class AdvancedResumeShortlister {
         public void setProjectWeight(double projectWeight) { this.projectWeight = projectWeight; }
     }
     
+    // JobRequirements compiled against the skill id table; immutable and shared by all workers
+    public static class ScoringPlan {
+        private final int[] requiredSkillIds;   // ascending
+        private final double[] skillWeights;    // indexed by skill id, 0 if not required
+        private final String[] preferredDegrees;
+        private final Set<String> preferredCertifications;
+        private final Pattern keywordPattern;   // null when there are no keywords
+        private final double experienceWeight;
+        private final double educationWeight;
+        private final double certificationWeight;
+        private final double projectWeight;
+        private final SkillAutomaton automaton;   // skill ids refer to this knowledge base
+        
+        private ScoringPlan(int[] requiredSkillIds, double[] skillWeights, String[] preferredDegrees,
+                            Set<String> preferredCertifications, Pattern keywordPattern, JobRequirements requirements,
+                            SkillAutomaton automaton) {
+            this.automaton = automaton;
+            this.requiredSkillIds = requiredSkillIds;
+            this.skillWeights = skillWeights;
+            this.preferredDegrees = preferredDegrees;
+            this.preferredCertifications = preferredCertifications;
+            this.keywordPattern = keywordPattern;
+            this.experienceWeight = requirements.getExperienceWeight();
+            this.educationWeight = requirements.getEducationWeight();
+            this.certificationWeight = requirements.getCertificationWeight();
+            this.projectWeight = requirements.getProjectWeight();
+        }
+        
+        public static ScoringPlan compile(JobRequirements requirements, SkillAutomaton automaton) {
+            // Required skills are interned case-insensitively; skills outside the knowledge base never match
+            double[] skillWeights = new double[automaton.getSkillCount()];
+            TreeSet<Integer> required = new TreeSet<>();
+            for (Map.Entry<String, Integer> req : requirements.getSkillWeights().entrySet()) {
+                int skillId = automaton.getSkillId(req.getKey());
+                if (skillId < 0) {
+                    System.err.println("Warning: required skill not in knowledge base: " + req.getKey());
+                    continue;
+                }
+                skillWeights[skillId] += req.getValue();
+                required.add(skillId);
+            }
+            
+            // One pass over a project line instead of one compiled pattern per keyword
+            Pattern keywordPattern = null;
+            if (!requirements.getKeywords().isEmpty()) {
+                String keywords = requirements.getKeywords().stream()
+                    .map(Pattern::quote)
+                    .collect(Collectors.joining("|"));
+                keywordPattern = Pattern.compile("\\b(?:" + keywords + ")\\b", Pattern.CASE_INSENSITIVE);
+            }
+            
+            return new ScoringPlan(
+                required.stream().mapToInt(Integer::intValue).toArray(),
+                skillWeights,
+                requirements.getPreferredDegrees().toArray(new String[0]),
+                Set.copyOf(requirements.getPreferredCertifications()),
+                keywordPattern,
+                requirements,
+                automaton);
+        }
+        
+        public double score(ResumeFeatures features) {
+            double score = 0;
+            
+            // Skill matching: sparse mention counts against dense weights
+            int[] skillIds = features.getSkillIds();
+            int[] skillCounts = features.getSkillCounts();
+            for (int i = 0; i < skillIds.length; i++) {
+                if (skillWeights[skillIds[i]] != 0) {
+                    score += skillPoints(skillIds[i], skillCounts[i]);
+                }
+            }
+            
+            // Experience scoring
+            score += experiencePoints(features.getYearsExperience());
+            
+            // Education scoring
+            for (String degree : features.getEducation()) {
+                score += degreePoints(degree);
+            }
+            
+            // Certification bonus
+            for (String cert : features.getCertifications()) {
+                score += certificationPoints(cert);
+            }
+            
+            // Project relevance
+            if (keywordPattern != null) {
+                for (String project : features.getProjects()) {
+                    score += projectPoints(project);
+                }
+            }
+            
+            return score;
+        }
+        
+        // Points per feature; the feature store adds the same values column by column
+        public double skillPoints(int skillId, int mentions) {
+            return Math.min(mentions, MAX_SKILL_MENTIONS) * skillWeights[skillId] * SKILL_WEIGHT;
+        }
+        
+        public double experiencePoints(int years) {
+            return Math.min(years, MAX_EXPERIENCE_YEARS) * experienceWeight * EXPERIENCE_WEIGHT;
+        }
+        
+        public double degreePoints(String degree) {
+            return matchesPreferredDegree(degree) ? EDUCATION_WEIGHT * educationWeight : 0;
+        }
+        
+        public double certificationPoints(String certification) {
+            return preferredCertifications.contains(certification) ? certificationWeight : 0;
+        }
+        
+        public double projectPoints(String project) {
+            return keywordPattern != null && keywordPattern.matcher(project).find() ? projectWeight : 0;
+        }
+        
+        private boolean matchesPreferredDegree(String degree) {
+            for (String preferred : preferredDegrees) {
+                if (degree.contains(preferred)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        public int[] getRequiredSkillIds() { return requiredSkillIds; }
+        public double getSkillWeight(int skillId) { return skillWeights[skillId]; }
+        public boolean hasKeywords() { return keywordPattern != null; }
+        public SkillAutomaton getAutomaton() { return automaton; }
+    }
+    
     // IO methods
     public JobRequirements loadJobRequirements(String filename) throws IOException {
+        return parseJobRequirements(Files.readAllLines(Paths.get(filename)));
+    }
+    
+    public JobRequirements parseJobRequirements(List<String> lines) {
         JobRequirements requirements = new JobRequirements();
-        List<String> lines = Files.readAllLines(Paths.get(filename));
         
         Map<String, Integer> skillWeights = new HashMap<>();
         Set<String> degrees = new HashSet<>();
@@ -397,13 +5766,13 @@ public class AdvancedResumeShortlister {
             }
             else if (line.startsWith("WEIGHT_EDUCATION:")) {
                 String value = line.replaceAll(".*?([\\d.]+).*", "$1"); // Extract first number
-                requirements.setExperienceWeight(Double.parseDouble(value));
+                requirements.setEducationWeight(Double.parseDouble(value));
             } else if (line.startsWith("WEIGHT_CERTIFICATION:")) {
                  String value = line.replaceAll(".*?([\\d.]+).*", "$1"); // Extract first number
-                requirements.setExperienceWeight(Double.parseDouble(value));
+                requirements.setCertificationWeight(Double.parseDouble(value));
             } else if (line.startsWith("WEIGHT_PROJECT:")) {
                  String value = line.replaceAll(".*?([\\d.]+).*", "$1"); // Extract first number
-                requirements.setExperienceWeight(Double.parseDouble(value));
+                requirements.setProjectWeight(Double.parseDouble(value));
             }
         }
         
@@ -418,13 +5787,10 @@ public class AdvancedResumeShortlister {
     public List<Resume> loadResumesFromDirectory(String dirPath) throws IOException {
         return Files.walk(Paths.get(dirPath))
                    .filter(Files::isRegularFile)
-                   .filter(path -> path.toString().endsWith(".txt") || path.toString().endsWith(".pdf"))
+                   .filter(AdvancedResumeShortlister::isResumeFile)
                    .map(path -> {
                        try {
-                           String content = path.toString().endsWith(".pdf") 
-                               ? extractTextFromPdf(path) 
-                               : Files.readString(path);
-                           return new Resume(path.getFileName().toString(), content);
+                           return readResume(path);
                        } catch (IOException e) {
                            System.err.println("Error reading file: " + path);
                            return null;
@@ -434,6 +5800,31 @@ public class AdvancedResumeShortlister {
                    .collect(Collectors.toList());
     }
     
+    private Resume readResume(Path path) throws IOException {
+        if (byteIngestion && !path.toString().endsWith(".pdf")) {
+            return new Resume(path.getFileName().toString(), path, Files.size(path));
+        }
+        long start = System.nanoTime();
+        String content;
+        long size;
+        if (path.toString().endsWith(".pdf")) {
+            content = extractTextFromPdf(path);
+            size = content.length();
+        } else {
+            // Same strictness as Files.readString, but the byte count is known
+            byte[] bytes = Files.readAllBytes(path);
+            content = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString();
+            size = bytes.length;
+        }
+        String name = path.getFileName().toString();
+        metrics.record(RunMetrics.READ, name, size, start);
+        return new Resume(name, content, path);
+    }
+    
+    private static boolean isResumeFile(Path path) {
+        return path.toString().endsWith(".txt") || path.toString().endsWith(".pdf");
+    }
+    
     private String extractTextFromPdf(Path path) {
         // In a real implementation, you would use a PDF library like Apache PDFBox
         // This is a placeholder for demonstration
@@ -445,22 +5836,7 @@ public class AdvancedResumeShortlister {
     }
     
     public void displayResults(List<RankedResume> rankedResumes) {
-        System.out.println("\nTop Candidates:");
-        System.out.println("Rank\tName\t\t\tScore\tSummary");
-        System.out.println("----------------------------------------");
-        
-        for (int i = 0; i < Math.min(rankedResumes.size(), 10); i++) {
-            RankedResume rr = rankedResumes.get(i);
-            String summary = rr.getFeatures().getSkillContexts().keySet().stream()
-                             .limit(3)
-                             .collect(Collectors.joining(", "));
-            
-            System.out.printf("%d\t%s\t%.2f\t%s...%n", 
-                i+1, 
-                rr.getResume().getName(), 
-                rr.getScore(),
-                summary);
-        }
+        printTopCandidates(rankedResumes);
         
         // Option to view detailed analysis
         System.out.println("\nEnter a candidate number to see detailed analysis (0 to exit):");
@@ -473,7 +5849,11 @@ public class AdvancedResumeShortlister {
                     RankedResume selected = rankedResumes.get(choice - 1);
                     System.out.println("\nDetailed Analysis for: " + selected.getResume().getName());
                     System.out.println("Score: " + selected.getScore());
-                    System.out.println(selected.getAnalysis());
+                    long start = System.nanoTime();
+                    String analysis = selected.getAnalysis();
+                    metrics.record(RunMetrics.ANALYSIS, selected.getResume().getName(), 0, start);
+                    System.out.println(analysis);
+                    printSkillContexts(selected);
                     System.out.println("\nEnter another number or 0 to exit:");
                 }
             } catch (InputMismatchException e) {
@@ -483,31 +5863,94 @@ public class AdvancedResumeShortlister {
         }
     }
     
-    public void saveResultsToFile(List<RankedResume> rankedResumes, String filename) throws IOException {
-        List<String> lines = new ArrayList<>();
-        lines.add("Rank,Name,Score,Top Skills,Experience,Education");
+    public void printTopCandidates(List<RankedResume> rankedResumes) {
+        System.out.println("\nTop Candidates:");
+        System.out.println("Rank\tName\t\t\tScore\tSummary");
+        System.out.println("----------------------------------------");
         
-        for (int i = 0; i < rankedResumes.size(); i++) {
+        for (int i = 0; i < Math.min(rankedResumes.size(), 10); i++) {
             RankedResume rr = rankedResumes.get(i);
-            String topSkills = rr.getFeatures().getSkillContexts().keySet().stream()
-                               .limit(5)
-                               .collect(Collectors.joining(";"));
-            String education = String.join(";", rr.getFeatures().getEducation());
+            String summary = Arrays.stream(rr.getFeatures().getTopSkillIds(3))
+                             .mapToObj(rr.getPlan().getAutomaton()::getSkillName)
+                             .collect(Collectors.joining(", "));
             
-            lines.add(String.format("%d,%s,%.2f,%s,%d,%s", 
-                i+1,
-                rr.getResume().getName(),
+            System.out.printf("%d\t%s\t%.2f\t%s...%n", 
+                i+1, 
+                rr.getResume().getName(), 
                 rr.getScore(),
-                topSkills,
-                rr.getFeatures().getYearsExperience(),
-                education));
+                summary);
         }
-        
-        Files.write(Paths.get(filename), lines);
+    }
+    
+    // Snippets are only built here, when a candidate is opened
+    private void printSkillContexts(RankedResume rr) {
+        ResumeFeatures features = rr.getFeatures();
+        CharSequence content = rr.getResume().getText();
+        System.out.println("Skill Contexts:");
+        for (int skillId : rr.getPlan().getRequiredSkillIds()) {
+            List<String> contexts = features.getSkillContexts(skillId, content, 3);
+            for (String context : contexts) {
+                System.out.printf("- %s: \"%s\"%n", rr.getPlan().getAutomaton().getSkillName(skillId), context);
+            }
+        }
+    }
+    
+    public void saveResultsToFile(List<RankedResume> rankedResumes, String filename) throws IOException {
+        saveRankingToFile(rankedResumes.stream().map(RankingEntry::of).iterator(), filename);
+    }
+    
+    // Writes rows as they come, in the output format, so a merged ranking never has to be held in memory
+    public void saveRankingToFile(Iterator<RankingEntry> ranking, String filename) throws IOException {
+        long start = System.nanoTime();
+        try (RankingWriter writer = RankingWriter.open(Paths.get(filename), outputFormat, false)) {
+            writer.writeAll(null, ranking);
+        }
+        metrics.record(RunMetrics.OUTPUT, filename, 0, start);
+        System.out.println("Results saved to " + filename);
+    }
+    
+    // One file for several jobs; each job's rows carry its name
+    public void saveCombinedRankingToFile(List<String> jobNames, List<Iterator<RankingEntry>> rankings,
+                                          String filename) throws IOException {
+        long start = System.nanoTime();
+        try (RankingWriter writer = RankingWriter.open(Paths.get(filename), outputFormat, true)) {
+            for (int j = 0; j < jobNames.size(); j++) {
+                writer.writeAll(jobNames.get(j), rankings.get(j));
+            }
+        }
+        metrics.record(RunMetrics.OUTPUT, filename, 0, start);
         System.out.println("Results saved to " + filename);
     }
     
+    // Result file name for the output format
+    public String resultFile(String baseName) {
+        return baseName + RankingWriter.extension(outputFormat);
+    }
+    
     public void setCurrentJobRequirements(JobRequirements requirements) {
-        this.currentJobRequirements = requirements;
+        this.scoringPlan = ScoringPlan.compile(requirements, SKILL_AUTOMATON);
+    }
+    
+    public void setByteIngestion(boolean byteIngestion) {
+        this.byteIngestion = byteIngestion;
+    }
+    
+    public void setRegexExtraction(boolean regexExtraction) {
+        this.regexExtraction = regexExtraction;
+    }
+    
+    public void setFeatureCache(FeatureCache featureCache) {
+        this.featureCache = featureCache;
+    }
+    
+    public void setNearDuplicateIndex(NearDuplicateIndex nearDuplicates) {
+        this.nearDuplicates = nearDuplicates;
+    }
+    
+    public void setOutputFormat(String outputFormat) {
+        if (!RankingWriter.FORMATS.contains(outputFormat)) {
+            throw new IllegalArgumentException("Unknown output format: " + outputFormat);
+        }
+        this.outputFormat = outputFormat;
     }
 }
\ No newline at end of file